@@ -270,7 +270,7 @@ public class MainActivity extends FragmentActivity {
                             MyFacebookWall.Contract.MESSAGE,
                             MyFacebookWall.Contract.PLACE_ID
                     },
-                    null, null, null);
+                    null, null, MyFacebookWall.Contract.CREATED_TIME + " DESC");
         }
 
         @Override
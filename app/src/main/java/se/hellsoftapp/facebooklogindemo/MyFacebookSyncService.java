@@ -1,20 +1,19 @@
 package se.hellsoftapp.facebooklogindemo;
 
-import android.app.AlarmManager;
 import android.app.IntentService;
-import android.app.PendingIntent;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.os.SystemClock;
 import android.util.Log;
 
+import com.facebook.FacebookRequestError;
 import com.facebook.HttpMethod;
 import com.facebook.Request;
 import com.facebook.Response;
@@ -26,6 +25,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
@@ -40,8 +44,13 @@ public class MyFacebookSyncService extends IntentService {
     private static final String ACTION_POST_PHOTO = "se.hellsoft.facebooklogindemo.action.POST_PHOTO";
     private static final String FACEBOOK_PREFS = "facebook_settings";
     private static final String NEXT_SINCE_VALUE = "nextSinceValue";
-    private static AlarmManager alarmMgr;
-    private static PendingIntent alarmIntent;
+    private static final String PENDING_PAGE_URL = "pendingPageUrl";
+    private static final String PENDING_SINCE_VALUE = "pendingSinceValue";
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES_PER_SYNC = 10;
+    private static final int RETENTION_MAX_ROWS = 1000;
+    private static final long RETENTION_MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private int mNewMessageCount;
 
 
     /**
@@ -51,14 +60,14 @@ public class MyFacebookSyncService extends IntentService {
      * @see IntentService
      */
     public static void startActionUpdateFromWall(Context context) {
+        // Later syncs are scheduled by SyncScheduler once this one finishes.
+        context.startService(newUpdateFromWallIntent(context));
+    }
+
+    static Intent newUpdateFromWallIntent(Context context) {
         Intent intent = new Intent(context, MyFacebookSyncService.class);
         intent.setAction(ACTION_UPDATE_FROM_WALL);
-        PendingIntent pendingIntent = PendingIntent.getService(context, 0, intent, 0);
-
-        alarmMgr = (AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
-        alarmMgr.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,0, AlarmManager.INTERVAL_FIFTEEN_MINUTES, pendingIntent );
-        context.startService(intent);
-
+        return intent;
     }
 
     /**
@@ -104,13 +113,22 @@ public class MyFacebookSyncService extends IntentService {
 
     private void handlePhotoUpload(Uri photoUri, String caption) {
         Session session = Session.getActiveSession();
-        boolean isOpened = session.isOpened();
+        boolean isOpened = session != null && session.isOpened();
         Log.d(MainActivity.TAG, "Logged in to facebook: " + isOpened);
-        if (session != null && isOpened && photoUri != null) {
+        if (isOpened && photoUri != null) {
+            ParcelFileDescriptor descriptor = null;
             try {
+                // Stream the original bytes (usually JPEG) instead of decoding to a Bitmap and
+                // re-encoding it as PNG.
                 ContentResolver resolver = getContentResolver();
-                Bitmap bitmap = BitmapFactory.decodeStream(resolver.openInputStream(photoUri));
-                Request request = Request.newUploadPhotoRequest(session, bitmap, new Request.Callback() {
+                descriptor = resolver.openFileDescriptor(photoUri, "r");
+                if (descriptor == null) {
+                    // The provider has nothing to give us, e.g. a crashed or misbehaving one.
+                    Log.e(MainActivity.TAG, "Could not open photo: " + photoUri);
+                    return;
+                }
+                String mimeType = resolver.getType(photoUri);
+                Request request = Request.newUploadPhotoRequest(session, descriptor, mimeType, new Request.Callback() {
                     @Override
                     public void onCompleted(Response response) {
                         Log.d(MainActivity.TAG, "Response: " + response.getError());
@@ -135,6 +153,20 @@ public class MyFacebookSyncService extends IntentService {
 
             } catch (FileNotFoundException e) {
                 Log.e(MainActivity.TAG, "Error uploading photo to Facebook!");
+            } finally {
+                // The request closes the descriptor once it has streamed it, but not if it failed
+                // before getting that far. Closing it again is harmless.
+                closeQuietly(descriptor);
+            }
+        }
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor descriptor) {
+        if (descriptor != null) {
+            try {
+                descriptor.close();
+            } catch (IOException e) {
+                Log.w(MainActivity.TAG, "Failed to close photo descriptor", e);
             }
         }
     }
@@ -142,53 +174,271 @@ public class MyFacebookSyncService extends IntentService {
     /**
      * Handle action Foo in the provided background thread with the provided
      * parameters.
+     * <p/>
+     * Pages through me/home until it reaches posts we already have, checkpointing
+     * the server's paging cursor after each page so that a sync interrupted by a
+     * network error or process death resumes where it left off.
      */
     private void handleActionUpdateFromWall() {
+        // Keeps the alarm chain going even if this sync dies before reporting back.
+        SyncScheduler.onSyncStarting(this);
+
         // Get active Facebook Session
         Session session = Session.getActiveSession();
-        boolean isOpened = session.isOpened();
+        boolean isOpened = session != null && session.isOpened();
         Log.d(MainActivity.TAG, "Logged in to facebook: " + isOpened);
-        if (session != null && isOpened) {
+        if (!isOpened) {
+            SyncScheduler.onSyncSkipped(this);
+        } else {
             SharedPreferences preferences
                     = getSharedPreferences(FACEBOOK_PREFS, MODE_PRIVATE);
-            long nextSinceValue = preferences.getLong(NEXT_SINCE_VALUE, -1);
-            Bundle params = new Bundle();
-            params.putString("fields", "id,from,message,type,place");
-            params.putInt("limit", 50);
-            String graphPath = "me/home";
-            if (nextSinceValue > 0) {
-                params.putLong("since", nextSinceValue);
+            String pendingPageUrl = preferences.getString(PENDING_PAGE_URL, null);
+            long pendingSinceValue = preferences.getLong(PENDING_SINCE_VALUE, -1);
+
+            // Only a sync that starts from the newest posts learns a new since value; a resumed one
+            // carries over the value its first page saw.
+            boolean isResuming = pendingPageUrl != null;
+            Request request;
+            if (isResuming) {
+                Log.d(MainActivity.TAG, "Resuming sync from: " + pendingPageUrl);
+                request = newPagingRequest(session, pendingPageUrl);
+            } else {
+                long nextSinceValue = preferences.getLong(NEXT_SINCE_VALUE, -1);
+                Bundle params = new Bundle();
+                params.putString("fields", "id,from,message,type,place,created_time");
+                params.putInt("limit", PAGE_SIZE);
+                if (nextSinceValue > 0) {
+                    params.putLong("since", nextSinceValue);
+                }
+                request = new Request(session, "me/home", params, HttpMethod.GET);
             }
-            Request request = new Request(session, graphPath, params, HttpMethod.GET);
-            Response response = request.executeAndWait();
-            Log.d(MainActivity.TAG, "Response: " + response.getError());
-
-            // Fetch current time to use in next request!
-
-            GraphObject graphObject = response.getGraphObject();
-//            Log.d(MainActivity.TAG, "Got graphObject: " + graphObject);
-            if (graphObject != null) {
-                long nowInSeconds = System.currentTimeMillis() / 1000;
-                preferences.edit().putLong(NEXT_SINCE_VALUE, nowInSeconds).apply();
-
-                JSONArray dataArray = (JSONArray) graphObject.getProperty("data");
-
-                int length = dataArray.length();
-                for (int i = 0; i < length; i++) {
-                    JSONObject wallMessage = null;
-                    try {
-                        wallMessage = dataArray.getJSONObject(i);
-                        storeWallMessage(wallMessage);
-                    } catch (JSONException e) {
-                        Log.e(MainActivity.TAG,
-                                "Invalid message format: " + wallMessage, e);
+
+            mNewMessageCount = 0;
+            int pages = 0;
+            while (request != null && pages < MAX_PAGES_PER_SYNC) {
+                Response response = request.executeAndWait();
+                FacebookRequestError error = response.getError();
+                if (error != null) {
+                    Log.e(MainActivity.TAG, "Sync failed: " + error);
+                    if (isPermanentError(error)) {
+                        // Retrying the same page would fail the same way, so start over from the
+                        // newest posts next time.
+                        preferences.edit().remove(PENDING_PAGE_URL).remove(PENDING_SINCE_VALUE).apply();
                     }
+                    // Otherwise keep the checkpoint; the next sync resumes from the page that failed.
+                    SyncScheduler.onSyncFailed(this);
+                    return;
+                }
+                pages++;
+
+                GraphObject graphObject = response.getGraphObject();
+                if (graphObject == null) {
+                    request = null;
+                    break;
+                }
+
+                if (!isResuming && pages == 1) {
+                    // The first page holds the newest posts. Its "previous" link carries the
+                    // server's cursor for anything newer, which is what the next sync asks for.
+                    // Later pages are older, so their cursors must not replace it.
+                    pendingSinceValue = getSinceFromPreviousPage(response);
                 }
+
+                JSONArray dataArray = graphObject.getInnerJSONObject().optJSONArray("data");
+                if (dataArray == null) {
+                    request = null;
+                    break;
+                }
+                boolean reachedStoredItems = storeWallMessages(dataArray);
+
+                Request nextRequest = reachedStoredItems
+                        ? null : response.getRequestForPagedResults(Response.PagingDirection.NEXT);
+                SharedPreferences.Editor editor = preferences.edit();
+                if (nextRequest != null) {
+                    editor.putString(PENDING_PAGE_URL, getNextPageUrl(response));
+                    editor.putLong(PENDING_SINCE_VALUE, pendingSinceValue);
+                }
+                editor.apply();
+                request = nextRequest;
+            }
+
+            // There is still a request to make only if the page limit ended the loop.
+            if (request != null) {
+                // Hit the page limit. The checkpoint written for the next page stays, so the next
+                // sync continues from there, and the since value is only committed once the
+                // backlog has been worked through; committing it now would skip the pages between.
+                Log.d(MainActivity.TAG, "Page limit reached, resuming next sync");
+            } else {
+                // Sync completed; commit the cursor for the next run.
+                SharedPreferences.Editor editor = preferences.edit();
+                if (pendingSinceValue > 0) {
+                    editor.putLong(NEXT_SINCE_VALUE, pendingSinceValue);
+                }
+                editor.remove(PENDING_PAGE_URL).remove(PENDING_SINCE_VALUE).apply();
             }
+
+            applyRetentionPolicy();
+            SyncScheduler.onSyncCompleted(this, mNewMessageCount);
+        }
+    }
+
+    /**
+     * Returns true for errors that retrying the same request can't fix: client errors such as an
+     * expired paging cursor, and OAuth errors, which need the user to log in again. Throttling is
+     * reported as a client error too, but clears up by itself.
+     */
+    private static boolean isPermanentError(FacebookRequestError error) {
+        if (error.getCategory() == FacebookRequestError.Category.THROTTLING) {
+            return false;
+        }
+        int statusCode = error.getRequestStatusCode();
+        return (statusCode >= 400 && statusCode < 500) || "OAuthException".equals(error.getErrorType());
+    }
+
+    private void applyRetentionPolicy() {
+        Bundle extras = new Bundle();
+        extras.putInt(MyFacebookWall.Contract.EXTRA_MAX_ROWS, RETENTION_MAX_ROWS);
+        extras.putLong(MyFacebookWall.Contract.EXTRA_MAX_AGE_MILLIS, RETENTION_MAX_AGE_MILLIS);
+        Bundle result = getContentResolver().call(MyFacebookWall.Contract.FACEBOOK_WALL_URI,
+                MyFacebookWall.Contract.METHOD_APPLY_RETENTION, null, extras);
+        if (result != null) {
+            Log.d(MainActivity.TAG, "Retention pruned "
+                    + result.getInt(MyFacebookWall.Contract.EXTRA_ROWS_PRUNED) + " messages, reclaimed "
+                    + result.getLong(MyFacebookWall.Contract.EXTRA_BYTES_RECLAIMED) + " bytes");
         }
     }
 
-    private void storeWallMessage(JSONObject wallMessage) throws JSONException {
+    /**
+     * Stores a page of wall messages.
+     *
+     * @return true if the page contained messages that were already stored, meaning
+     * there is no need to fetch older pages.
+     */
+    private boolean storeWallMessages(JSONArray dataArray) {
+        int length = dataArray.length();
+        List<JSONObject> messages = new ArrayList<JSONObject>(length);
+        List<String> messageIds = new ArrayList<String>(length);
+        for (int i = 0; i < length; i++) {
+            JSONObject wallMessage = null;
+            try {
+                wallMessage = dataArray.getJSONObject(i);
+                messageIds.add(wallMessage.getString("id"));
+                messages.add(wallMessage);
+            } catch (JSONException e) {
+                Log.e(MainActivity.TAG,
+                        "Invalid message format: " + wallMessage, e);
+            }
+        }
+
+        // One query for the whole page rather than one per message.
+        Set<String> storedIds = getStoredMessageIds(messageIds);
+        List<ContentValues> newMessages = new ArrayList<ContentValues>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (storedIds.contains(messageIds.get(i))) {
+                continue;
+            }
+            JSONObject wallMessage = messages.get(i);
+            try {
+                newMessages.add(toContentValues(wallMessage));
+            } catch (JSONException e) {
+                Log.e(MainActivity.TAG,
+                        "Invalid message format: " + wallMessage, e);
+            }
+        }
+
+        // One transaction and one change notification for the whole page.
+        if (!newMessages.isEmpty()) {
+            int inserted = getContentResolver()
+                    .bulkInsert(MyFacebookWall.Contract.FACEBOOK_WALL_URI,
+                            newMessages.toArray(new ContentValues[newMessages.size()]));
+            Log.d(MainActivity.TAG, "Inserted " + inserted + " messages");
+            mNewMessageCount += inserted;
+        }
+        return !storedIds.isEmpty();
+    }
+
+    /**
+     * Returns which of the given message ids are already stored. A page holds at most
+     * {@link #PAGE_SIZE} ids, well below SQLite's limit on bound arguments.
+     */
+    private Set<String> getStoredMessageIds(List<String> messageIds) {
+        Set<String> storedIds = new HashSet<String>();
+        if (messageIds.isEmpty()) {
+            return storedIds;
+        }
+        StringBuilder selection = new StringBuilder(MyFacebookWall.Contract.MESSAGE_ID).append(" IN (");
+        for (int i = 0; i < messageIds.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(')');
+        Cursor cursor = getContentResolver().query(MyFacebookWall.Contract.FACEBOOK_WALL_URI,
+                new String[]{MyFacebookWall.Contract.MESSAGE_ID}, selection.toString(),
+                messageIds.toArray(new String[messageIds.size()]), null);
+        if (cursor == null) {
+            return storedIds;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                storedIds.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return storedIds;
+    }
+
+    private static String getNextPageUrl(Response response) {
+        return getPagingUrl(response, "next");
+    }
+
+    private static long getSinceFromPreviousPage(Response response) {
+        String previous = getPagingUrl(response, "previous");
+        if (previous != null) {
+            String since = Uri.parse(previous).getQueryParameter("since");
+            if (since != null) {
+                try {
+                    return Long.parseLong(since);
+                } catch (NumberFormatException e) {
+                    Log.w(MainActivity.TAG, "Invalid since value: " + since);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String getPagingUrl(Response response, String direction) {
+        GraphObject graphObject = response.getGraphObject();
+        if (graphObject == null) {
+            return null;
+        }
+        JSONObject paging = graphObject.getInnerJSONObject().optJSONObject("paging");
+        if (paging == null) {
+            return null;
+        }
+        return paging.optString(direction, null);
+    }
+
+    /**
+     * Rebuilds a request from a paging URL returned by the server. Request can't be
+     * created from a URL outside the SDK, so the path and query are copied over; the
+     * access token is left out since the session adds it.
+     */
+    private static Request newPagingRequest(Session session, String pageUrl) {
+        Uri uri = Uri.parse(pageUrl);
+        Bundle params = new Bundle();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!"access_token".equals(name)) {
+                params.putString(name, uri.getQueryParameter(name));
+            }
+        }
+        String graphPath = uri.getPath();
+        if (graphPath.startsWith("/")) {
+            graphPath = graphPath.substring(1);
+        }
+        return new Request(session, graphPath, params, HttpMethod.GET);
+    }
+
+    private static ContentValues toContentValues(JSONObject wallMessage) throws JSONException {
         String messageId = wallMessage.getString("id");
         JSONObject from = wallMessage.getJSONObject("from");
         String fromId = from.getString("id");
@@ -215,15 +465,7 @@ public class MyFacebookSyncService extends IntentService {
         values.put(MyFacebookWall.Contract.TYPE, type);
         values.put(MyFacebookWall.Contract.CREATED_TIME, createdTime);
         values.put(MyFacebookWall.Contract.PLACE_ID, placeName);
-
-        Uri newMessage = getContentResolver()
-                .insert(MyFacebookWall.Contract.FACEBOOK_WALL_URI,
-                        values);
-        if (newMessage == null) {
-            Log.e(MainActivity.TAG, "Invalid message!");
-        } else {
-            Log.d(MainActivity.TAG, "Inserted: " + newMessage);
-        }
+        return values;
     }
 
     /**
@@ -231,11 +473,16 @@ public class MyFacebookSyncService extends IntentService {
      * parameters.
      */
     private void handleActionUserLogout() {
+        SyncScheduler.cancel(this);
         getContentResolver()
                 .delete(MyFacebookWall.Contract.FACEBOOK_WALL_URI,
                         null, null);
         SharedPreferences preferences
                 = getSharedPreferences(FACEBOOK_PREFS, MODE_PRIVATE);
-        preferences.edit().remove(NEXT_SINCE_VALUE).apply();
+        preferences.edit()
+                .remove(NEXT_SINCE_VALUE)
+                .remove(PENDING_PAGE_URL)
+                .remove(PENDING_SINCE_VALUE)
+                .apply();
     }
 }
@@ -1,19 +1,35 @@
 package se.hellsoftapp.facebooklogindemo;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 public class MyFacebookWall extends ContentProvider {
     private static final String DB_NAME = "MyFacebookWall.db";
-    private static final int DB_VERSION = 1;
+    private static final int DB_VERSION = 2;
+    // Format of created_time as returned by the Graph API
+    private static final String CREATED_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
     private MyDatabaseHelper mDatabaseHelper;
+    // Set while applyBatch runs so that the individual operations don't each notify observers.
+    private final ThreadLocal<Boolean> mApplyingBatch = new ThreadLocal<Boolean>();
     public static final String CREATE_SQL = "CREATE TABLE " + Contract.TABLE_NAME + "( "
             + Contract.ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + Contract.MESSAGE_ID + " TEXT, "
@@ -23,6 +39,40 @@ public class MyFacebookWall extends ContentProvider {
             + Contract.CREATED_TIME + " TEXT, "
             + Contract.PLACE_ID + " TEXT, "
             + Contract.TYPE + " TEXT);";
+    // Overlapping syncs deliver the same posts more than once; message_id keeps only the latest copy.
+    public static final String CREATE_MESSAGE_ID_INDEX_SQL = "CREATE UNIQUE INDEX IF NOT EXISTS "
+            + Contract.TABLE_NAME + "_" + Contract.MESSAGE_ID + "_idx ON "
+            + Contract.TABLE_NAME + "(" + Contract.MESSAGE_ID + ");";
+    public static final String CREATE_CREATED_TIME_INDEX_SQL = "CREATE INDEX IF NOT EXISTS "
+            + Contract.TABLE_NAME + "_" + Contract.CREATED_TIME + "_idx ON "
+            + Contract.TABLE_NAME + "(" + Contract.CREATED_TIME + ");";
+    public static final String CREATE_FROM_ID_INDEX_SQL = "CREATE INDEX IF NOT EXISTS "
+            + Contract.TABLE_NAME + "_" + Contract.FROM_ID + "_idx ON "
+            + Contract.TABLE_NAME + "(" + Contract.FROM_ID + ");";
+    // Drops all but the newest row for each message_id, so the unique index can be created.
+    private static final String DELETE_DUPLICATES_SQL = "DELETE FROM " + Contract.TABLE_NAME
+            + " WHERE " + Contract.ID + " NOT IN (SELECT MAX(" + Contract.ID + ") FROM "
+            + Contract.TABLE_NAME + " GROUP BY " + Contract.MESSAGE_ID + ");";
+    private static final String INSERT_SQL = "INSERT OR REPLACE INTO " + Contract.TABLE_NAME + "("
+            + Contract.MESSAGE_ID + ", "
+            + Contract.MESSAGE + ", "
+            + Contract.FROM_ID + ", "
+            + Contract.FROM_NAME + ", "
+            + Contract.CREATED_TIME + ", "
+            + Contract.PLACE_ID + ", "
+            + Contract.TYPE + ") VALUES (?, ?, ?, ?, ?, ?, ?);";
+    // Bind order of INSERT_SQL
+    private static final String[] INSERT_COLUMNS = new String[]{
+            Contract.MESSAGE_ID,
+            Contract.MESSAGE,
+            Contract.FROM_ID,
+            Contract.FROM_NAME,
+            Contract.CREATED_TIME,
+            Contract.PLACE_ID,
+            Contract.TYPE};
+    // Upper bound on rows deleted per retention run, so a large backlog is pruned over several syncs.
+    private static final int RETENTION_CHUNK_SIZE = 500;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
     public static final int ALL_MESSAGES = 1;
     public static final int ONE_MESSAGE = 2;
 
@@ -50,6 +100,13 @@ public class MyFacebookWall extends ContentProvider {
         public static final String TABLE_NAME = "facebook_message";
         public static final Uri FACEBOOK_WALL_URI
                 = Uri.parse("content://" + AUTHORITY + "/" + TABLE_NAME);
+
+        // ContentResolver.call() method that prunes old messages, see applyRetention()
+        public static final String METHOD_APPLY_RETENTION = "applyRetention";
+        public static final String EXTRA_MAX_ROWS = "maxRows";
+        public static final String EXTRA_MAX_AGE_MILLIS = "maxAgeMillis";
+        public static final String EXTRA_ROWS_PRUNED = "rowsPruned";
+        public static final String EXTRA_BYTES_RECLAIMED = "bytesReclaimed";
     }
 
 
@@ -97,18 +154,143 @@ public class MyFacebookWall extends ContentProvider {
         long id = -1;
         switch (sUriMatcher.match(uri)) {
             case ALL_MESSAGES:
-                id = db.insert(Contract.TABLE_NAME, "", values);
+                id = db.insertWithOnConflict(Contract.TABLE_NAME, "", values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
                 break;
         }
 
         Uri newMessage = null;
         if (id != -1) {
             newMessage = Uri.withAppendedPath(uri, String.valueOf(id));
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return newMessage;
     }
 
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        if (sUriMatcher.match(uri) != ALL_MESSAGES) {
+            return 0;
+        }
+
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        int inserted = 0;
+        SQLiteStatement statement = db.compileStatement(INSERT_SQL);
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                statement.clearBindings();
+                for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+                    String columnValue = value.getAsString(INSERT_COLUMNS[i]);
+                    if (columnValue != null) {
+                        statement.bindString(i + 1, columnValue);
+                    }
+                }
+                if (statement.executeInsert() != -1) {
+                    inserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        if (inserted > 0) {
+            notifyChange(uri);
+        }
+        return inserted;
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        mApplyingBatch.set(Boolean.TRUE);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mApplyingBatch.remove();
+        }
+
+        notifyChange(Contract.FACEBOOK_WALL_URI);
+        return results;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (Contract.METHOD_APPLY_RETENTION.equals(method)) {
+            return applyRetention(extras != null ? extras : Bundle.EMPTY);
+        }
+        return null;
+    }
+
+    /**
+     * Deletes messages older than EXTRA_MAX_AGE_MILLIS and those beyond the newest
+     * EXTRA_MAX_ROWS, at most RETENTION_CHUNK_SIZE of each per run, then returns the
+     * freed pages to the file system.
+     */
+    private Bundle applyRetention(Bundle extras) {
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        enableIncrementalVacuum(db);
+        long pagesBefore = DatabaseUtils.longForQuery(db, "PRAGMA page_count;", null);
+
+        int pruned = 0;
+        long maxAgeMillis = extras.getLong(Contract.EXTRA_MAX_AGE_MILLIS, -1);
+        if (maxAgeMillis > 0) {
+            SimpleDateFormat format = new SimpleDateFormat(CREATED_TIME_FORMAT, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            String cutoff = format.format(new Date(System.currentTimeMillis() - maxAgeMillis));
+            // created_time is always in UTC with a fixed format, so it can be compared as a string.
+            pruned += db.delete(Contract.TABLE_NAME, Contract.ID + " IN (SELECT " + Contract.ID
+                    + " FROM " + Contract.TABLE_NAME + " WHERE " + Contract.CREATED_TIME + " < ?"
+                    + " LIMIT " + RETENTION_CHUNK_SIZE + ")", new String[]{cutoff});
+        }
+
+        int maxRows = extras.getInt(Contract.EXTRA_MAX_ROWS, -1);
+        if (maxRows >= 0) {
+            pruned += db.delete(Contract.TABLE_NAME, Contract.ID + " IN (SELECT " + Contract.ID
+                    + " FROM " + Contract.TABLE_NAME + " ORDER BY " + Contract.CREATED_TIME + " DESC"
+                    + " LIMIT " + RETENTION_CHUNK_SIZE + " OFFSET " + maxRows + ")", null);
+        }
+
+        long bytesReclaimed = 0;
+        if (pruned > 0) {
+            // incremental_vacuum returns rows while it works; reading them all runs it to completion.
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum;", null);
+            try {
+                while (cursor.moveToNext()) {
+                    // Each step frees another page.
+                }
+            } finally {
+                cursor.close();
+            }
+
+            long pagesAfter = DatabaseUtils.longForQuery(db, "PRAGMA page_count;", null);
+            long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size;", null);
+            bytesReclaimed = Math.max(0, pagesBefore - pagesAfter) * pageSize;
+            notifyChange(Contract.FACEBOOK_WALL_URI);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(Contract.EXTRA_ROWS_PRUNED, pruned);
+        result.putLong(Contract.EXTRA_BYTES_RECLAIMED, bytesReclaimed);
+        return result;
+    }
+
+    private void enableIncrementalVacuum(SQLiteDatabase db) {
+        // auto_vacuum can only be switched on for an existing database by a full VACUUM,
+        // which is done once here since VACUUM can't run inside onUpgrade's transaction.
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum;", null) != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+            db.execSQL("VACUUM;");
+        }
+    }
+
     @Override
     public int update(Uri uri, ContentValues values, String selection,
                       String[] selectionArgs) {
@@ -125,7 +307,7 @@ public class MyFacebookWall extends ContentProvider {
         }
 
         if (updated > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return updated;
     }
@@ -145,11 +327,17 @@ public class MyFacebookWall extends ContentProvider {
         }
 
         if (deleted > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return deleted;
     }
 
+    private void notifyChange(Uri uri) {
+        if (mApplyingBatch.get() == null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
     class MyDatabaseHelper extends SQLiteOpenHelper {
 
         public MyDatabaseHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
@@ -159,11 +347,21 @@ public class MyFacebookWall extends ContentProvider {
         @Override
         public void onCreate(SQLiteDatabase db) {
             db.execSQL(CREATE_SQL);
+            createIndexes(db);
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 2) {
+                db.execSQL(DELETE_DUPLICATES_SQL);
+                createIndexes(db);
+            }
+        }
 
+        private void createIndexes(SQLiteDatabase db) {
+            db.execSQL(CREATE_MESSAGE_ID_INDEX_SQL);
+            db.execSQL(CREATE_CREATED_TIME_INDEX_SQL);
+            db.execSQL(CREATE_FROM_ID_INDEX_SQL);
         }
     }
 }
@@ -0,0 +1,147 @@
+package se.hellsoftapp.facebooklogindemo;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Schedules the next wall sync based on how the previous one went. Busy walls
+ * are synced more often, quiet walls less often, and failures back off
+ * exponentially. Keeps counters of syncs run, skipped and empty so the
+ * intervals can be tuned.
+ */
+public class SyncScheduler {
+    private static final String SCHEDULER_PREFS = "sync_scheduler";
+    private static final String INTERVAL = "interval";
+    private static final String FAILURES = "failures";
+    private static final String SYNCS_RUN = "syncsRun";
+    private static final String SYNCS_SKIPPED = "syncsSkipped";
+    private static final String SYNCS_EMPTY = "syncsEmpty";
+
+    private static final long MIN_INTERVAL = 5 * 60 * 1000;
+    private static final long DEFAULT_INTERVAL = AlarmManager.INTERVAL_FIFTEEN_MINUTES;
+    private static final long MAX_INTERVAL = 2 * AlarmManager.INTERVAL_HOUR;
+    // A sync returning at least this many new posts counts as busy
+    private static final int BUSY_THRESHOLD = 10;
+    private static final int MAX_BACKOFF_EXPONENT = 5;
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Schedules a retry as if the sync that is about to run will fail. Each of the
+     * other callbacks replaces it with the real next sync, so it only fires if the
+     * sync never finishes, e.g. because of an uncaught exception or the process
+     * being killed, which would otherwise end the chain of one-shot alarms.
+     */
+    public static void onSyncStarting(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        schedule(context, getRetryDelay(preferences, preferences.getInt(FAILURES, 0) + 1));
+    }
+
+    /**
+     * Narrows the interval if the sync found many new posts, widens it if it
+     * found none, and schedules the next sync.
+     */
+    public static void onSyncCompleted(Context context, int newMessages) {
+        SharedPreferences preferences = getPreferences(context);
+        long interval = preferences.getLong(INTERVAL, DEFAULT_INTERVAL);
+        if (newMessages >= BUSY_THRESHOLD) {
+            interval = Math.max(MIN_INTERVAL, interval / 2);
+        } else if (newMessages == 0) {
+            interval = Math.min(MAX_INTERVAL, interval * 2);
+        }
+
+        SharedPreferences.Editor editor = preferences.edit()
+                .putLong(INTERVAL, interval)
+                .putInt(FAILURES, 0)
+                .putInt(SYNCS_RUN, preferences.getInt(SYNCS_RUN, 0) + 1);
+        if (newMessages == 0) {
+            editor.putInt(SYNCS_EMPTY, preferences.getInt(SYNCS_EMPTY, 0) + 1);
+        }
+        editor.apply();
+
+        schedule(context, interval);
+    }
+
+    /**
+     * Retries after the current interval doubled once per consecutive failure.
+     */
+    public static void onSyncFailed(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        int failures = preferences.getInt(FAILURES, 0) + 1;
+        preferences.edit()
+                .putInt(FAILURES, failures)
+                .putInt(SYNCS_RUN, preferences.getInt(SYNCS_RUN, 0) + 1)
+                .apply();
+
+        schedule(context, getRetryDelay(preferences, failures));
+    }
+
+    /**
+     * Records a sync that didn't run because there was no open session, and
+     * checks back at the longest interval.
+     */
+    public static void onSyncSkipped(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        preferences.edit()
+                .putInt(SYNCS_SKIPPED, preferences.getInt(SYNCS_SKIPPED, 0) + 1)
+                .apply();
+
+        schedule(context, MAX_INTERVAL);
+    }
+
+    /**
+     * Cancels any scheduled sync and resets the interval, e.g. on logout.
+     */
+    public static void cancel(Context context) {
+        getAlarmManager(context).cancel(getSyncIntent(context));
+        getPreferences(context).edit()
+                .remove(INTERVAL)
+                .remove(FAILURES)
+                .apply();
+    }
+
+    public static int getSyncsRun(Context context) {
+        return getPreferences(context).getInt(SYNCS_RUN, 0);
+    }
+
+    public static int getSyncsSkipped(Context context) {
+        return getPreferences(context).getInt(SYNCS_SKIPPED, 0);
+    }
+
+    public static int getSyncsEmpty(Context context) {
+        return getPreferences(context).getInt(SYNCS_EMPTY, 0);
+    }
+
+    private static long getRetryDelay(SharedPreferences preferences, int failures) {
+        long interval = preferences.getLong(INTERVAL, DEFAULT_INTERVAL);
+        long backoff = interval << Math.min(failures, MAX_BACKOFF_EXPONENT);
+        return Math.min(MAX_INTERVAL, backoff);
+    }
+
+    private static void schedule(Context context, long delay) {
+        // A single non-repeating alarm that is replaced on every call, rather than
+        // registering another repeating alarm each time.
+        getAlarmManager(context).set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + delay, getSyncIntent(context));
+        Log.d(MainActivity.TAG, "Next sync in " + (delay / 1000) + "s (run: " + getSyncsRun(context)
+                + ", skipped: " + getSyncsSkipped(context) + ", empty: " + getSyncsEmpty(context) + ")");
+    }
+
+    private static PendingIntent getSyncIntent(Context context) {
+        return PendingIntent.getService(context, 0,
+                MyFacebookSyncService.newUpdateFromWallIntent(context), PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static AlarmManager getAlarmManager(Context context) {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(SCHEDULER_PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -23,6 +23,7 @@ import android.net.Uri;
 import android.os.*;
 import android.text.TextUtils;
 import android.util.Pair;
+import com.facebook.internal.CountingSSLSocketFactory;
 import com.facebook.internal.ServerProtocol;
 import com.facebook.model.*;
 import com.facebook.internal.Logger;
@@ -104,7 +105,7 @@ public class Request {
     private static final String STAGING_PARAM = "file";
     private static final String OBJECT_PARAM = "object";
 
-    private static final String MIME_BOUNDARY = "3i2ndDfv2rTHiSisAbouNdArYfORhtTPEefj3q2f";
+    static final String MIME_BOUNDARY = "3i2ndDfv2rTHiSisAbouNdArYfORhtTPEefj3q2f";
 
     private static String defaultBatchApplicationId;
 
@@ -330,6 +331,31 @@ public class Request {
         return new Request(session, MY_PHOTOS, parameters, HttpMethod.POST, callback);
     }
 
+    /**
+     * Creates a new Request configured to upload a photo to the user's default photo album. The photo
+     * will be streamed from the specified file descriptor as-is, without being decoded or recompressed,
+     * so the original encoding (e.g., JPEG from the camera) is preserved.
+     *
+     * @param session    the Session to use, or null; if non-null, the session must be in an opened state
+     * @param descriptor the file descriptor containing the photo to upload; it will be closed once uploaded
+     * @param mimeType   the MIME type of the photo, or null if unknown
+     * @param callback   a callback that will be called when the request is completed to handle success or error conditions
+     * @return a Request that is ready to execute
+     */
+    public static Request newUploadPhotoRequest(Session session, ParcelFileDescriptor descriptor, String mimeType,
+            Callback callback) {
+        Validate.notNull(descriptor, "descriptor");
+
+        Bundle parameters = new Bundle(1);
+        if (mimeType != null) {
+            parameters.putParcelable(PICTURE_PARAM, new ParcelFileDescriptorWithMimeType(descriptor, mimeType));
+        } else {
+            parameters.putParcelable(PICTURE_PARAM, descriptor);
+        }
+
+        return new Request(session, MY_PHOTOS, parameters, HttpMethod.POST, callback);
+    }
+
     /**
      * Creates a new Request configured to upload a photo to the user's default photo album. The photo
      * will be read from the specified file descriptor.
@@ -1355,14 +1381,16 @@ public class Request {
             throw new FacebookException("could not construct URL for request", e);
         }
 
-        HttpURLConnection connection;
+        HttpURLConnection connection = null;
         try {
             connection = createConnection(url);
 
             serializeToUrlConnection(requests, connection);
         } catch (IOException e) {
+            Utility.disconnectQuietly(connection);
             throw new FacebookException("could not construct request body", e);
         } catch (JSONException e) {
+            Utility.disconnectQuietly(connection);
             throw new FacebookException("could not construct request body", e);
         }
 
@@ -1561,10 +1589,12 @@ public class Request {
      *            If there was an error in the protocol used to communicate with the service
      */
     public static List<Response> executeConnectionAndWait(HttpURLConnection connection, RequestBatch requests) {
+        // Not disconnected here: fromHttpConnection closes the response stream once it has read it to the end,
+        // which hands the socket back to the platform's keep-alive pool, and disconnects on an error response or if
+        // reading or parsing fails. Calling disconnect() after a successful read would force a new TLS handshake for
+        // the next request.
         List<Response> responses = Response.fromHttpConnection(connection, requests);
 
-        Utility.disconnectQuietly(connection);
-
         int numRequests = requests.size();
         if (numRequests != responses.size()) {
             throw new FacebookException(String.format("Received %d responses while expecting %d", responses.size(),
@@ -1695,6 +1725,7 @@ public class Request {
         connection.setRequestProperty(CONTENT_TYPE_HEADER, getMimeContentType());
 
         connection.setChunkedStreamingMode(0);
+        CountingSSLSocketFactory.track(connection);
         return connection;
     }
 
@@ -1740,6 +1771,10 @@ public class Request {
         return uriBuilder.toString();
     }
 
+    final boolean hasOverriddenURL() {
+        return overriddenURL != null;
+    }
+
     final String getUrlForBatchedRequest() {
         if (overriddenURL != null) {
             throw new FacebookException("Can't override URL for a batch request");
@@ -1772,7 +1807,7 @@ public class Request {
         return appendParametersToBaseUrl(baseUrl);
     }
 
-    private void serializeToBatch(JSONArray batch, Bundle attachments) throws JSONException, IOException {
+    void serializeToBatch(JSONArray batch, Bundle attachments) throws JSONException, IOException {
         JSONObject batchEntry = new JSONObject();
 
         if (this.batchEntryName != null) {
@@ -2074,13 +2109,25 @@ public class Request {
         throw new IllegalArgumentException("Unsupported parameter type.");
     }
 
-    private interface KeyValueSerializer {
+    interface KeyValueSerializer {
         void writeString(String key, String value) throws IOException;
     }
 
-    private static class Serializer implements KeyValueSerializer {
+    static class Serializer implements KeyValueSerializer {
+        // Boundaries and header fragments never change, so they are encoded once rather than going through
+        // String.format(...).getBytes() on every write.
+        private static final byte[] CRLF_BYTES = encodeTemplate("\r\n");
+        private static final byte[] RECORD_BOUNDARY_BYTES = encodeTemplate("--" + MIME_BOUNDARY + "\r\n");
+        private static final byte[] CONTENT_DISPOSITION_BYTES =
+                encodeTemplate("Content-Disposition: form-data; name=\"");
+        private static final byte[] FILENAME_BYTES = encodeTemplate("\"; filename=\"");
+        private static final byte[] QUOTE_BYTES = encodeTemplate("\"");
+        private static final byte[] CONTENT_TYPE_BYTES = encodeTemplate(CONTENT_TYPE_HEADER + ": ");
+
         private final BufferedOutputStream outputStream;
         private final Logger logger;
+        private final byte[] encodeBuffer = new byte[Utility.DEFAULT_STREAM_BUFFER_SIZE];
+        private int encodeBufferPosition;
         private boolean firstWrite = true;
 
         public Serializer(BufferedOutputStream outputStream, Logger logger) {
@@ -2106,7 +2153,8 @@ public class Request {
 
         public void writeString(String key, String value) throws IOException {
             writeContentDisposition(key, null, null);
-            writeLine("%s", value);
+            writeUtf8(value);
+            writeTemplate(CRLF_BYTES);
             writeRecordBoundary();
             if (logger != null) {
                 logger.appendKeyValue("    " + key, value);
@@ -2117,7 +2165,7 @@ public class Request {
             writeContentDisposition(key, key, "image/png");
             // Note: quality parameter is ignored for PNG
             bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
-            writeLine("");
+            writeTemplate(CRLF_BYTES);
             writeRecordBoundary();
             logger.appendKeyValue("    " + key, "<Image>");
         }
@@ -2125,7 +2173,7 @@ public class Request {
         public void writeBytes(String key, byte[] bytes) throws IOException {
             writeContentDisposition(key, key, "content/unknown");
             this.outputStream.write(bytes);
-            writeLine("");
+            writeTemplate(CRLF_BYTES);
             writeRecordBoundary();
             logger.appendKeyValue("    " + key, String.format("<Data: %d>", bytes.length));
         }
@@ -2141,63 +2189,110 @@ public class Request {
             writeContentDisposition(key, key, mimeType);
 
             ParcelFileDescriptor.AutoCloseInputStream inputStream = null;
-            BufferedInputStream bufferedInputStream = null;
             int totalBytes = 0;
             try {
                 inputStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
-                bufferedInputStream = new BufferedInputStream(inputStream);
 
-                byte[] buffer = new byte[8192];
+                // The encode buffer is free at this point, so copy through it rather than allocating another.
                 int bytesRead;
-                while ((bytesRead = bufferedInputStream.read(buffer)) != -1) {
-                    this.outputStream.write(buffer, 0, bytesRead);
+                while ((bytesRead = inputStream.read(encodeBuffer)) != -1) {
+                    this.outputStream.write(encodeBuffer, 0, bytesRead);
                     totalBytes += bytesRead;
                 }
             } finally {
-                if (bufferedInputStream != null) {
-                    bufferedInputStream.close();
-                }
                 if (inputStream != null) {
                     inputStream.close();
                 }
             }
-            writeLine("");
+            writeTemplate(CRLF_BYTES);
             writeRecordBoundary();
             logger.appendKeyValue("    " + key, String.format("<Data: %d>", totalBytes));
         }
 
         public void writeRecordBoundary() throws IOException {
-            writeLine("--%s", MIME_BOUNDARY);
+            writeTemplate(RECORD_BOUNDARY_BYTES);
         }
 
         public void writeContentDisposition(String name, String filename, String contentType) throws IOException {
-            write("Content-Disposition: form-data; name=\"%s\"", name);
+            writeTemplate(CONTENT_DISPOSITION_BYTES);
+            writeUtf8(name);
             if (filename != null) {
-                write("; filename=\"%s\"", filename);
+                writeTemplate(FILENAME_BYTES);
+                writeUtf8(filename);
             }
-            writeLine(""); // newline after Content-Disposition
+            writeTemplate(QUOTE_BYTES);
+            writeTemplate(CRLF_BYTES); // newline after Content-Disposition
             if (contentType != null) {
-                writeLine("%s: %s", CONTENT_TYPE_HEADER, contentType);
+                writeTemplate(CONTENT_TYPE_BYTES);
+                writeUtf8(contentType);
+                writeTemplate(CRLF_BYTES);
+            }
+            writeTemplate(CRLF_BYTES); // blank line before content
+        }
+
+        private void writeTemplate(byte[] template) throws IOException {
+            writeBoundaryIfFirstWrite();
+            this.outputStream.write(template);
+        }
+
+        // Encodes directly into a reused buffer; equivalent to String.getBytes("UTF-8"), including replacing
+        // unpaired surrogates with '?'.
+        private void writeUtf8(String string) throws IOException {
+            writeBoundaryIfFirstWrite();
+
+            int length = string.length();
+            for (int i = 0; i < length; i++) {
+                if (encodeBufferPosition + 4 > encodeBuffer.length) {
+                    flushEncodeBuffer();
+                }
+
+                char c = string.charAt(i);
+                if (c < 0x80) {
+                    encodeBuffer[encodeBufferPosition++] = (byte) c;
+                } else if (c < 0x800) {
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0xc0 | (c >> 6));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0xf0 | (codePoint >> 18));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    encodeBuffer[encodeBufferPosition++] = '?';
+                } else {
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0xe0 | (c >> 12));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    encodeBuffer[encodeBufferPosition++] = (byte) (0x80 | (c & 0x3f));
+                }
             }
-            writeLine(""); // blank line before content
+            flushEncodeBuffer();
         }
 
-        public void write(String format, Object... args) throws IOException {
+        private void flushEncodeBuffer() throws IOException {
+            if (encodeBufferPosition > 0) {
+                this.outputStream.write(encodeBuffer, 0, encodeBufferPosition);
+                encodeBufferPosition = 0;
+            }
+        }
+
+        private void writeBoundaryIfFirstWrite() throws IOException {
             if (firstWrite) {
                 // Prepend all of our output with a boundary string.
-                this.outputStream.write("--".getBytes());
-                this.outputStream.write(MIME_BOUNDARY.getBytes());
-                this.outputStream.write("\r\n".getBytes());
+                this.outputStream.write(RECORD_BOUNDARY_BYTES);
                 firstWrite = false;
             }
-            this.outputStream.write(String.format(format, args).getBytes());
         }
 
-        public void writeLine(String format, Object... args) throws IOException {
-            write(format, args);
-            write("\r\n");
+        private static byte[] encodeTemplate(String template) {
+            try {
+                return template.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported.
+                throw new FacebookException(e);
+            }
         }
-
     }
 
     /**
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.facebook.internal.Logger;
+import com.facebook.internal.Validate;
+
+import java.util.*;
+
+/**
+ * Collects Requests that are issued within a short window of each other and executes them together as
+ * one or more RequestBatches, instead of making one round trip per request. Each Request's
+ * {@link Request.Callback} is still called with its own Response.
+ * <p/>
+ * Batches never exceed {@link Request#MAXIMUM_BATCH_SIZE} requests, and a request that names another entry
+ * via {@link Request#setBatchEntryDependsOn(String)} is always placed in the same batch as that entry, after it,
+ * whichever of the two was enqueued first. Requests for a full URL, such as those returned by
+ * {@link Response#getRequestForPagedResults(Response.PagingDirection)}, can't be part of a batch and are
+ * executed on their own.
+ */
+public class RequestCoalescer {
+    private static final String TAG = RequestCoalescer.class.getSimpleName();
+
+    private final Handler handler;
+    private final long windowInMilliseconds;
+    private final Object lock = new Object();
+    private List<Request> pendingRequests = new ArrayList<Request>();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param windowInMilliseconds how long to wait after the first pending request before executing the
+     *                             requests collected so far
+     */
+    public RequestCoalescer(long windowInMilliseconds) {
+        if (windowInMilliseconds < 0) {
+            throw new IllegalArgumentException("Argument windowInMilliseconds must be >= 0.");
+        }
+        this.windowInMilliseconds = windowInMilliseconds;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Queues a request to be executed with any other requests issued within the window. This function returns
+     * immediately; results are delivered through the request's callback.
+     *
+     * @param request the Request to execute
+     */
+    public void enqueue(Request request) {
+        Validate.notNull(request, "request");
+
+        synchronized (lock) {
+            pendingRequests.add(request);
+            if (pendingRequests.size() == 1) {
+                handler.postDelayed(flushRunnable, windowInMilliseconds);
+            }
+        }
+    }
+
+    /**
+     * Executes all pending requests immediately, without waiting for the window to elapse.
+     */
+    public void flush() {
+        List<Request> requests;
+        synchronized (lock) {
+            handler.removeCallbacks(flushRunnable);
+            if (pendingRequests.isEmpty()) {
+                return;
+            }
+            requests = pendingRequests;
+            pendingRequests = new ArrayList<Request>();
+        }
+
+        List<RequestBatch> batches = createBatches(requests);
+        Logger.log(LoggingBehavior.REQUESTS, TAG, "Coalesced %d requests into %d batches", requests.size(),
+                batches.size());
+        for (RequestBatch batch : batches) {
+            Request.executeBatchAsync(batch);
+        }
+    }
+
+    static List<RequestBatch> createBatches(List<Request> requests) {
+        List<RequestBatch> batches = new ArrayList<RequestBatch>();
+        List<Request> batchableRequests = new ArrayList<Request>(requests.size());
+        for (Request request : requests) {
+            if (request.hasOverriddenURL()) {
+                // A full URL can't be expressed as a batch entry's relative_url.
+                batches.add(new RequestBatch(request));
+            } else {
+                batchableRequests.add(request);
+            }
+        }
+
+        // Requests joined by batchEntryDependsOn form a group that has to be sent in the same batch. With each
+        // request ordered after the entry it depends on, that entry's group already exists when it is reached.
+        List<List<Request>> groups = new ArrayList<List<Request>>();
+        Map<String, List<Request>> groupsByEntryName = new HashMap<String, List<Request>>();
+        for (Request request : orderDependenciesFirst(batchableRequests)) {
+            String dependsOn = request.getBatchEntryDependsOn();
+            List<Request> group = (dependsOn != null) ? groupsByEntryName.get(dependsOn) : null;
+            if (group == null) {
+                group = new ArrayList<Request>();
+                groups.add(group);
+            }
+            group.add(request);
+
+            String entryName = request.getBatchEntryName();
+            if (entryName != null && !groupsByEntryName.containsKey(entryName)) {
+                groupsByEntryName.put(entryName, group);
+            }
+        }
+
+        RequestBatch batch = new RequestBatch();
+        Set<String> batchEntryNames = new HashSet<String>();
+        for (List<Request> group : groups) {
+            boolean fits = batch.size() + group.size() <= Request.MAXIMUM_BATCH_SIZE;
+            if (!fits || containsAnyEntryName(group, batchEntryNames)) {
+                // Entry names must be unique within a batch, so unrelated requests that happen to share a
+                // name are sent separately.
+                if (!batch.isEmpty()) {
+                    batches.add(batch);
+                }
+                batch = new RequestBatch();
+                batchEntryNames.clear();
+            }
+
+            for (Request request : group) {
+                if (batch.size() == Request.MAXIMUM_BATCH_SIZE) {
+                    // A single group larger than the limit cannot be kept together; the server would reject it.
+                    batches.add(batch);
+                    batch = new RequestBatch();
+                    batchEntryNames.clear();
+                }
+                batch.add(request);
+                if (request.getBatchEntryName() != null) {
+                    batchEntryNames.add(request.getBatchEntryName());
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    // Returns the requests in their original order, except that each one is moved after the entry it depends on
+    // if that entry was enqueued later.
+    private static List<Request> orderDependenciesFirst(List<Request> requests) {
+        Map<String, Request> requestsByEntryName = new HashMap<String, Request>();
+        for (Request request : requests) {
+            String entryName = request.getBatchEntryName();
+            if (entryName != null && !requestsByEntryName.containsKey(entryName)) {
+                requestsByEntryName.put(entryName, request);
+            }
+        }
+
+        List<Request> ordered = new ArrayList<Request>(requests.size());
+        Set<Request> visited = new HashSet<Request>();
+        for (Request request : requests) {
+            addAfterDependencies(request, requestsByEntryName, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private static void addAfterDependencies(Request request, Map<String, Request> requestsByEntryName,
+            Set<Request> visited, List<Request> ordered) {
+        // A request that was already visited is either in the list or, for a dependency cycle, about to be.
+        if (!visited.add(request)) {
+            return;
+        }
+
+        String dependsOn = request.getBatchEntryDependsOn();
+        Request dependency = (dependsOn != null) ? requestsByEntryName.get(dependsOn) : null;
+        if (dependency != null) {
+            addAfterDependencies(dependency, requestsByEntryName, visited, ordered);
+        }
+        ordered.add(request);
+    }
+
+    private static boolean containsAnyEntryName(List<Request> group, Set<String> entryNames) {
+        for (Request request : group) {
+            String entryName = request.getBatchEntryName();
+            if (entryName != null && entryNames.contains(entryName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -30,6 +30,7 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -283,8 +284,9 @@ public class Response {
             // Try loading from cache.  If that fails, load from the network.
             if (!cacheableRequestBatch.getForceRoundTrip() && cache != null && !Utility.isNullOrEmpty(cacheKey)) {
                 try {
-                    stream = cache.get(cacheKey);
-                    if (stream != null) {
+                    ByteBuffer mapped = cache.getMapped(cacheKey);
+                    if (mapped != null) {
+                        stream = new ByteBufferInputStream(mapped);
                         return createResponsesFromStream(stream, null, requests, true);
                     }
                 } catch (FacebookException exception) { // retry via roundtrip below
@@ -297,8 +299,13 @@ public class Response {
         }
 
         // Load from the network, and cache the result if not an error.
+        boolean streamFullyRead = false;
+        boolean isErrorResponse = false;
         try {
-            if (connection.getResponseCode() >= 400) {
+            int responseCode = connection.getResponseCode();
+            CountingSSLSocketFactory.recordResponse(connection);
+            if (responseCode >= 400) {
+                isErrorResponse = true;
                 stream = connection.getErrorStream();
             } else {
                 stream = connection.getInputStream();
@@ -310,7 +317,9 @@ public class Response {
                 }
             }
 
-            return createResponsesFromStream(stream, connection, requests, false);
+            List<Response> responses = createResponsesFromStream(stream, connection, requests, false);
+            streamFullyRead = true;
+            return responses;
         } catch (FacebookException facebookException) {
             Logger.log(LoggingBehavior.REQUESTS, RESPONSE_LOG_TAG, "Response <Error>: %s", facebookException);
             return constructErrorResponses(requests, connection, facebookException);
@@ -324,12 +333,24 @@ public class Response {
             Logger.log(LoggingBehavior.REQUESTS, RESPONSE_LOG_TAG, "Response <Error>: %s", exception);
             return constructErrorResponses(requests, connection, new FacebookException(exception));
         } finally {
+            // Once the body has been read to its end, closing the stream hands the socket back to the platform's
+            // keep-alive pool. Otherwise the socket is in an unknown state and must not be reused. Error responses
+            // aren't pooled either, since the server may be about to close the connection or be in a bad state.
+            // Either way the connection has to be disconnected before the stream is closed, or it is pooled anyway.
+            if (!streamFullyRead || isErrorResponse) {
+                Utility.disconnectQuietly(connection);
+            }
             Utility.closeQuietly(stream);
         }
     }
 
     static List<Response> createResponsesFromStream(InputStream stream, HttpURLConnection connection,
             RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
+        // A single request's response is its body as a whole, and logging raw responses needs the full string,
+        // so only multi-request batches benefit from streaming.
+        if (requests.size() > 1 && !Settings.isLoggingBehaviorEnabled(LoggingBehavior.INCLUDE_RAW_RESPONSES)) {
+            return createResponsesFromBatchStream(stream, connection, requests, isFromCache);
+        }
 
         String responseString = Utility.readStreamToString(stream);
         Logger.log(LoggingBehavior.INCLUDE_RAW_RESPONSES, RESPONSE_LOG_TAG,
@@ -339,6 +360,53 @@ public class Response {
         return createResponsesFromString(responseString, connection, requests, isFromCache);
     }
 
+    private static List<Response> createResponsesFromBatchStream(InputStream stream, HttpURLConnection connection,
+            RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
+        JsonArrayStreamReader reader = new JsonArrayStreamReader(stream);
+        if (!reader.beginArray()) {
+            // Not a batch result (e.g., an error for the whole batch); handle it the same way as before.
+            return createResponsesFromString(reader.readRemainingValue(), connection, requests, isFromCache);
+        }
+
+        int numRequests = requests.size();
+        List<Response> responses = new ArrayList<Response>(numRequests);
+
+        // Each element is parsed and turned into a Response as soon as it has been read, so we never hold the
+        // raw text of the whole batch. The parsed elements are also collected into batchResult so that
+        // FacebookRequestError.getBatchRequestResult still sees the full batch; this only adds references to
+        // objects the responses keep anyway.
+        JSONArray batchResult = new JSONArray();
+        String elementString;
+        while ((elementString = reader.nextElement()) != null) {
+            int index = responses.size();
+            if (index >= numRequests) {
+                throw new FacebookException("Unexpected number of results");
+            }
+
+            Object obj = new JSONTokener(elementString).nextValue();
+            batchResult.put(obj);
+
+            Request request = requests.get(index);
+            try {
+                responses.add(createResponseFromObject(request, connection, obj, isFromCache, batchResult));
+            } catch (JSONException e) {
+                responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+            } catch (FacebookException e) {
+                responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+            }
+        }
+        reader.skipRemaining();
+
+        if (responses.size() != numRequests) {
+            throw new FacebookException("Unexpected number of results");
+        }
+
+        Logger.log(LoggingBehavior.REQUESTS, RESPONSE_LOG_TAG, "Response\n  Id: %s\n  Size: %d\n  Responses:\n%s\n",
+                requests.getId(), reader.getCharactersRead(), responses);
+
+        return responses;
+    }
+
     static List<Response> createResponsesFromString(String responseString, HttpURLConnection connection,
             RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
         JSONTokener tokener = new JSONTokener(responseString);
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+import com.facebook.LoggingBehavior;
+
+import java.util.*;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Holds on to bitmaps that views are done with, bucketed by byte size, so that ImageDownloader can decode new
+ * images into them via BitmapFactory.Options.inBitmap instead of allocating.
+ * <p/>
+ * The pool counts references to every bitmap that ImageDownloader hands out: each ImageResponse it delivers
+ * with a bitmap counts as one, owned by the callback, and {@link #retain(Bitmap)} adds more. A bitmap is only
+ * pooled once every reference has been given back with {@link #release(Bitmap)} and it is no longer in
+ * ImageMemoryCache. A memory cache hit hands the same bitmap to every caller, so a caller that never releases,
+ * because it doesn't know about the pool, keeps that bitmap out of it for good; it can't be reused while that
+ * caller may still be showing it.
+ */
+public final class BitmapPool {
+    static final String TAG = BitmapPool.class.getSimpleName();
+
+    // Don't decode into a bitmap much larger than needed; the excess would be held for as long as the new image.
+    private static final int MAX_OVERSIZE_FACTOR = 2;
+
+    private static final Object lock = new Object();
+    // All guarded by lock.  References are weak, so that views that go away without releasing their bitmaps don't
+    // keep them alive; Bitmap uses identity equality, so this is keyed by instance.
+    private static final Map<Bitmap, Integer> references = new WeakHashMap<Bitmap, Integer>();
+    private static final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    // Pooled bitmaps from least to most recently released, for evicting over the cap.
+    private static final LinkedList<Bitmap> releaseOrder = new LinkedList<Bitmap>();
+    private static int maxSizeInBytes = getDefaultMaxSize();
+    private static int sizeInBytes;
+    private static boolean isRegisteredForTrimMemory;
+
+    private BitmapPool() {
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    public static void retain(Bitmap bitmap) {
+        if (bitmap == null || !isSupported()) {
+            return;
+        }
+        synchronized (lock) {
+            Integer count = references.get(bitmap);
+            references.put(bitmap, (count == null) ? 1 : count + 1);
+        }
+    }
+
+    public static void release(Bitmap bitmap) {
+        if (bitmap == null || !isSupported()) {
+            return;
+        }
+        synchronized (lock) {
+            Integer count = references.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                references.put(bitmap, count - 1);
+                return;
+            }
+            references.remove(bitmap);
+            if (!bitmap.isMutable() || bitmap.isRecycled() || ImageMemoryCache.contains(bitmap)) {
+                return;
+            }
+            put(bitmap);
+        }
+    }
+
+    public static void setMaxSizeInBytes(int maxSizeInBytes) {
+        if (maxSizeInBytes < 0) {
+            throw new IllegalArgumentException("Pool size must be >= 0");
+        }
+        synchronized (lock) {
+            BitmapPool.maxSizeInBytes = maxSizeInBytes;
+            trimToSize(maxSizeInBytes);
+        }
+    }
+
+    public static int getSizeInBytes() {
+        synchronized (lock) {
+            return sizeInBytes;
+        }
+    }
+
+    // Follows ComponentCallbacks2.onTrimMemory: gives back half the pool while the app is running low, and all
+    // of it once the app is in the background.
+    public static void trimMemory(int level) {
+        synchronized (lock) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                trimToSize(0);
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                trimToSize(sizeInBytes / 2);
+            }
+        }
+    }
+
+    // Registers for onTrimMemory the first time it is called with a context, on versions that support it.
+    static void registerForTrimMemory(Context context) {
+        if (context == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        synchronized (lock) {
+            if (isRegisteredForTrimMemory) {
+                return;
+            }
+            isRegisteredForTrimMemory = true;
+        }
+        TrimMemoryCallbacks.register(context.getApplicationContext());
+    }
+
+    // Removes and returns a pooled bitmap that an image of the given size can be decoded into, or null.  Before
+    // KitKat, inBitmap only works for an unscaled decode into a bitmap of exactly the same size.
+    static Bitmap get(int width, int height, int sampleSize) {
+        if (!isSupported() || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        boolean isExactMatchRequired = Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT;
+        if (isExactMatchRequired && sampleSize != 1) {
+            return null;
+        }
+
+        int decodedWidth = (width + sampleSize - 1) / sampleSize;
+        int decodedHeight = (height + sampleSize - 1) / sampleSize;
+        int byteCount = decodedWidth * decodedHeight * 4; // ARGB_8888
+        synchronized (lock) {
+            for (Map.Entry<Integer, LinkedList<Bitmap>> bucket : buckets.tailMap(byteCount).entrySet()) {
+                if (bucket.getKey() > byteCount * MAX_OVERSIZE_FACTOR) {
+                    break;
+                }
+                for (Iterator<Bitmap> iterator = bucket.getValue().iterator(); iterator.hasNext(); ) {
+                    Bitmap bitmap = iterator.next();
+                    if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                        continue;
+                    }
+                    if (isExactMatchRequired &&
+                            (bitmap.getWidth() != decodedWidth || bitmap.getHeight() != decodedHeight)) {
+                        continue;
+                    }
+                    iterator.remove();
+                    if (bucket.getValue().isEmpty()) {
+                        buckets.remove(bucket.getKey());
+                    }
+                    releaseOrder.remove(bitmap);
+                    sizeInBytes -= bucket.getKey();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Must be called with lock held.
+    private static void put(Bitmap bitmap) {
+        int byteCount = ImageMemoryCache.getByteCount(bitmap);
+        if (byteCount > maxSizeInBytes) {
+            return;
+        }
+
+        LinkedList<Bitmap> bucket = buckets.get(byteCount);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            buckets.put(byteCount, bucket);
+        }
+        bucket.add(bitmap);
+        releaseOrder.add(bitmap);
+        sizeInBytes += byteCount;
+
+        trimToSize(maxSizeInBytes);
+    }
+
+    // Must be called with lock held.
+    private static void trimToSize(int size) {
+        while (sizeInBytes > size && !releaseOrder.isEmpty()) {
+            Bitmap eldest = releaseOrder.removeFirst();
+            int byteCount = ImageMemoryCache.getByteCount(eldest);
+            LinkedList<Bitmap> bucket = buckets.get(byteCount);
+            if (bucket != null) {
+                bucket.remove(eldest);
+                if (bucket.isEmpty()) {
+                    buckets.remove(byteCount);
+                }
+            }
+            sizeInBytes -= byteCount;
+        }
+        if (size == 0) {
+            Logger.log(LoggingBehavior.CACHE, TAG, "bitmap pool cleared");
+        }
+    }
+
+    private static int getDefaultMaxSize() {
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static final class TrimMemoryCallbacks implements ComponentCallbacks2 {
+        static void register(Context context) {
+            context.registerComponentCallbacks(new TrimMemoryCallbacks());
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+            ImageMemoryCache.trimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import com.facebook.LoggingBehavior;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Wraps the default SSLSocketFactory so we can tell how many new TLS sockets, and so handshakes, Graph connections
+ * required, and how many responses came over a pooled connection instead. The platform pools connections per socket
+ * factory, so all connections must share the single instance returned by {@link #getInstance()}.
+ *
+ * A connection served from the keep-alive pool never reaches the factory, so reuse is worked out per connection:
+ * HttpURLConnection connects on the thread that sends the request, so a response that arrives without the factory
+ * having created a socket on that thread since the connection was tracked came over a reused connection. Connections
+ * that are created on one thread and read on another can't be attributed, and are left out of the response and
+ * reuse counts.
+ */
+public final class CountingSSLSocketFactory extends SSLSocketFactory {
+    private static final String TAG = CountingSSLSocketFactory.class.getSimpleName();
+
+    private static CountingSSLSocketFactory instance;
+
+    private final SSLSocketFactory delegate;
+    private final AtomicInteger handshakeCount = new AtomicInteger();
+    private final AtomicInteger responseCount = new AtomicInteger();
+    private final AtomicInteger reuseCount = new AtomicInteger();
+    private final ThreadLocal<int[]> threadHandshakeCount = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    // Guarded by itself.  Weak, since connections that never get a response are never removed.
+    private final Map<HttpURLConnection, TrackedConnection> trackedConnections =
+            new WeakHashMap<HttpURLConnection, TrackedConnection>();
+
+    CountingSSLSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    public synchronized static CountingSSLSocketFactory getInstance() {
+        if (instance == null) {
+            instance = new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+        }
+        return instance;
+    }
+
+    /**
+     * Routes the connection through the shared factory, if it is an HTTPS connection.
+     */
+    public static void track(HttpURLConnection connection) {
+        if (connection instanceof HttpsURLConnection) {
+            getInstance().startTracking((HttpsURLConnection) connection);
+        }
+    }
+
+    /**
+     * Counts the response to a connection passed to {@link #track(HttpURLConnection)}. Call once the response code
+     * has been received, on the thread that sent the request.
+     */
+    public static void recordResponse(HttpURLConnection connection) {
+        if (connection instanceof HttpsURLConnection) {
+            getInstance().finishTracking(connection);
+        }
+    }
+
+    /**
+     * Returns the number of new TLS sockets created, i.e., the number of handshakes performed.
+     */
+    public int getHandshakeCount() {
+        return handshakeCount.get();
+    }
+
+    /**
+     * Returns the number of responses recorded for tracked connections.
+     */
+    public int getResponseCount() {
+        return responseCount.get();
+    }
+
+    /**
+     * Returns the number of recorded responses that came over a pooled connection, without a new handshake.
+     */
+    public int getReuseCount() {
+        return reuseCount.get();
+    }
+
+    void startTracking(HttpsURLConnection connection) {
+        connection.setSSLSocketFactory(this);
+        TrackedConnection tracked = new TrackedConnection(Thread.currentThread(), threadHandshakeCount.get()[0]);
+        synchronized (trackedConnections) {
+            trackedConnections.put(connection, tracked);
+        }
+    }
+
+    void finishTracking(HttpURLConnection connection) {
+        TrackedConnection tracked;
+        synchronized (trackedConnections) {
+            tracked = trackedConnections.remove(connection);
+        }
+        if (tracked == null || tracked.thread != Thread.currentThread()) {
+            return;
+        }
+
+        responseCount.incrementAndGet();
+        if (threadHandshakeCount.get()[0] == tracked.threadHandshakeCount) {
+            int reuses = reuseCount.incrementAndGet();
+            Logger.log(LoggingBehavior.REQUESTS, TAG, "Reused connection to %s (reuses: %d)",
+                    connection.getURL().getHost(), reuses);
+        }
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return countHandshake(delegate.createSocket(socket, host, port, autoClose), host);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return countHandshake(delegate.createSocket(host, port), host);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return countHandshake(delegate.createSocket(host, port, localHost, localPort), host);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return countHandshake(delegate.createSocket(host, port), host.getHostName());
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return countHandshake(delegate.createSocket(address, port, localAddress, localPort), address.getHostName());
+    }
+
+    private Socket countHandshake(Socket socket, String host) {
+        threadHandshakeCount.get()[0]++;
+        int handshakes = handshakeCount.incrementAndGet();
+        Logger.log(LoggingBehavior.REQUESTS, TAG, "New TLS connection to %s (handshakes: %d)", host, handshakes);
+        return socket;
+    }
+
+    private static final class TrackedConnection {
+        final Thread thread;
+        // The number of sockets the thread had created when the connection was tracked.
+        final int threadHandshakeCount;
+
+        TrackedConnection(Thread thread, int threadHandshakeCount) {
+            this.thread = thread;
+            this.threadHandshakeCount = threadHandshakeCount;
+        }
+    }
+}
@@ -25,10 +25,12 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidParameterException;
-import java.util.Date;
-import java.util.PriorityQueue;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 // This class is intended to be thread-safe.
 //
@@ -50,6 +52,18 @@ import java.util.concurrent.atomic.AtomicLong;
 // corresponding file has been deleted.  Given this and that cache files never change other than deleting in trim()
 // or clear(),  we only have to ensure that there is at most one trim() or clear() process deleting files at any
 // given time.
+//
+// An in-memory index of cache files, in access order, is built from the directory listing the first time the cache
+// is used and kept current by get(), put and trim().  It lets get() return misses without touching the disk and
+// lets trim() evict the least recently used files without listing and sorting the whole directory.  Access times
+// are only written back to the files (for rebuilding the index after a restart) when they are noticeably stale.
+//
+// A cache can be split into shards (see Limits.setShardCount).  Each shard is a subdirectory with its own lock and
+// index, and a key always maps to the same shard by the first byte of its file name.  Threads working on different
+// shards never contend, so concurrent gets and puts scale with the number of shards.  The byte and file limits
+// still apply to the cache as a whole: sizes are totalled across shards, and trim() evicts whichever shard's least
+// recently used file was accessed longest ago, so a single file can use the whole quota no matter how many shards
+// there are.  With a single shard, files live directly in the cache directory as before.
 
 /**
  * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
@@ -60,28 +74,96 @@ public final class FileLruCache {
     static final String TAG = FileLruCache.class.getSimpleName();
     private static final String HEADER_CACHEKEY_KEY = "key";
     private static final String HEADER_CACHE_CONTENT_TAG_KEY = "tag";
+    // Don't write an access time back to disk more often than this for any one file.
+    private static final long LAST_MODIFIED_UPDATE_INTERVAL_MILLIS = 60 * 1000;
+    // Shards are picked by the first byte of the file name.
+    private static final int MAX_SHARD_COUNT = 256;
 
     private static final AtomicLong bufferIndex = new AtomicLong();
 
     private final String tag;
     private final Limits limits;
     private final File directory;
-    private boolean isTrimPending;
-    private final Object lock;
+    private final Shard[] shards;
     private AtomicLong lastClearCacheTime = new AtomicLong(0);
+    // Totals over the indexes of all shards.  Only updated with the corresponding shard's lock held.
+    private final AtomicLong indexedByteCount = new AtomicLong();
+    private final AtomicLong indexedFileCount = new AtomicLong();
+    private final Object trimLock = new Object();
+    // Guarded by trimLock.
+    private boolean isTrimPending;
 
     // The value of tag should be a final String that works as a directory name.
     public FileLruCache(Context context, String tag, Limits limits) {
         this.tag = tag;
         this.limits = limits;
         this.directory = new File(context.getCacheDir(), tag);
-        this.lock = new Object();
 
-        // Ensure the cache dir exists
+        int shardCount = limits.getShardCount();
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            File shardDirectory = (shardCount == 1) ? directory : new File(directory, Integer.toString(i));
+            this.shards[i] = new Shard(shardDirectory);
+        }
+
+        // Ensure the cache dirs exist
         if (this.directory.mkdirs() || this.directory.isDirectory()) {
-            // Remove any stale partially-written files from a previous run
-            BufferFile.deleteAll(this.directory);
+            for (Shard shard : shards) {
+                if (shard.directory.mkdirs() || shard.directory.isDirectory()) {
+                    // Remove any stale partially-written files from a previous run
+                    BufferFile.deleteAll(shard.directory);
+                }
+            }
+            deleteOtherLayouts();
+        }
+    }
+
+    // fileName is the md5 hash of key, whose first byte spreads keys evenly over the shards.  Utility.md5hash returns
+    // null if MD5 is unavailable; the key's own hash code picks the shard then.
+    private Shard getShard(String key, String fileName) {
+        if (shards.length == 1) {
+            return shards[0];
         }
+        int hash = (fileName != null) ? Integer.parseInt(fileName.substring(0, 2), 16) : key.hashCode() & 0x7fffffff;
+        return shards[hash % shards.length];
+    }
+
+    // Files left behind by a different shard count are never looked up or trimmed again, so remove them.
+    private void deleteOtherLayouts() {
+        final File[] stale = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                if (shards.length == 1) {
+                    return file.isDirectory();
+                }
+                for (Shard shard : shards) {
+                    if (shard.directory.equals(file)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        if (stale != null && stale.length > 0) {
+            Settings.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (File file : stale) {
+                        deleteRecursively(file);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
     }
 
     // This is not robust to files changing dynamically underneath it and should therefore only be used
@@ -90,21 +172,25 @@ public final class FileLruCache {
     //
     // Also, since trim() runs asynchronously now, this blocks until any pending trim has completed.
     long sizeInBytesForTest() {
-        synchronized (lock) {
+        synchronized (trimLock) {
             while (isTrimPending) {
                 try {
-                    lock.wait();
+                    trimLock.wait();
                 } catch (InterruptedException e) {
                     // intentional no-op
                 }
             }
         }
 
-        File[] files = this.directory.listFiles();
         long total = 0;
-        if (files != null) {
-            for (File file : files) {
-                total += file.length();
+        for (Shard shard : shards) {
+            File[] files = shard.directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile()) {
+                        total += file.length();
+                    }
+                }
             }
         }
         return total;
@@ -115,12 +201,54 @@ public final class FileLruCache {
     }
 
     public InputStream get(String key, String contentTag) throws IOException {
-        File file = new File(this.directory, Utility.md5hash(key));
+        CacheHit hit = openHit(key, contentTag);
+        return (hit != null) ? hit.stream : null;
+    }
+
+    public ByteBuffer getMapped(String key) throws IOException {
+        return getMapped(key, null);
+    }
+
+    // Returns a read-only view of the cached content (without the header), or null if the key is not cached.
+    // The mapping stays valid after the file is trimmed or the cache is cleared.
+    public ByteBuffer getMapped(String key, String contentTag) throws IOException {
+        CacheHit hit = openHit(key, contentTag);
+        if (hit == null) {
+            return null;
+        }
+
+        try {
+            FileChannel channel = hit.input.getChannel();
+            long contentLength = channel.size() - hit.header.length;
+            return channel.map(FileChannel.MapMode.READ_ONLY, hit.header.length, contentLength);
+        } finally {
+            hit.stream.close();
+        }
+    }
+
+    private CacheHit openHit(String key, String contentTag) throws IOException {
+        String fileName = Utility.md5hash(key);
+        if (fileName == null) {
+            // Nothing can have been stored without a file name.
+            return null;
+        }
+        Shard shard = getShard(key, fileName);
+        IndexEntry entry;
+        synchronized (shard.lock) {
+            shard.loadIndexIfNeeded();
+            entry = shard.getFromIndex(fileName);
+            if (entry == null || !entry.mayMatch(key, contentTag)) {
+                return null;
+            }
+        }
+
+        File file = new File(shard.directory, fileName);
 
         FileInputStream input = null;
         try {
             input = new FileInputStream(file);
         } catch (IOException e) {
+            shard.removeFromIndex(fileName, entry);
             return null;
         }
 
@@ -128,17 +256,30 @@ public final class FileLruCache {
         boolean success = false;
 
         try {
-            JSONObject header = StreamHeader.readHeader(buffered);
+            StreamHeader.Header header = StreamHeader.readHeader(buffered);
             if (header == null) {
                 return null;
             }
 
-            String foundKey = header.optString(HEADER_CACHEKEY_KEY);
+            String foundKey = header.key;
             if ((foundKey == null) || !foundKey.equals(key)) {
                 return null;
             }
 
-            String headerContentTag = header.optString(HEADER_CACHE_CONTENT_TAG_KEY, null);
+            if (header.version > 0 && header.contentLength != file.length() - header.length) {
+                Logger.log(LoggingBehavior.CACHE, TAG, "Content length mismatch for " + file.getName());
+                return null;
+            }
+
+            String headerContentTag = header.contentTag;
+            boolean shouldMigrate;
+            synchronized (shard.lock) {
+                entry.setHeader(foundKey, headerContentTag);
+                shouldMigrate = header.version < StreamHeader.HEADER_VERSION && entry.startMigration();
+            }
+            if (shouldMigrate) {
+                postMigrate(file, foundKey, headerContentTag);
+            }
 
             if ((contentTag == null && headerContentTag != null) ||
                     (contentTag != null && !contentTag.equals(headerContentTag))) {
@@ -146,12 +287,14 @@ public final class FileLruCache {
             }
 
             long accessTime = new Date().getTime();
-            Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to " + Long.valueOf(accessTime) + " for "
-                    + file.getName());
-            file.setLastModified(accessTime);
+            if (entry.shouldUpdateLastModified(accessTime)) {
+                Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to " + Long.valueOf(accessTime)
+                        + " for " + file.getName());
+                file.setLastModified(accessTime);
+            }
 
             success = true;
-            return buffered;
+            return new CacheHit(input, buffered, header);
         } finally {
             if (!success) {
                 buffered.close();
@@ -163,8 +306,12 @@ public final class FileLruCache {
         return openPutStream(key, null);
     }
 
-    public OutputStream openPutStream(final String key, String contentTag) throws IOException {
-        final File buffer = BufferFile.newFile(this.directory);
+    public OutputStream openPutStream(final String key, final String contentTag) throws IOException {
+        // Prefix the stream with the actual key, since there could be collisions
+        final byte[] headerBytes = StreamHeader.encodeHeader(key, Utility.isNullOrEmpty(contentTag) ? null : contentTag);
+
+        // Write the buffer file into the target's shard so the rename on close stays within one directory.
+        final File buffer = BufferFile.newFile(getShard(key, Utility.md5hash(key)).directory);
         buffer.delete();
         if (!buffer.createNewFile()) {
             throw new IOException("Could not create file at " + buffer.getAbsolutePath());
@@ -186,8 +333,10 @@ public final class FileLruCache {
                 // should be deleted rather than renamed and saved.
                 if (bufferFileCreateTime < lastClearCacheTime.get()) {
                     buffer.delete();
+                } else if (!StreamHeader.writeContentLength(buffer, headerBytes.length)) {
+                    buffer.delete();
                 } else {
-                    renameToTargetAndTrim(key, buffer);
+                    renameToTargetAndTrim(key, contentTag, buffer);
                 }
             }
         };
@@ -197,21 +346,10 @@ public final class FileLruCache {
         boolean success = false;
 
         try {
-            // Prefix the stream with the actual key, since there could be collisions
-            JSONObject header = new JSONObject();
-            header.put(HEADER_CACHEKEY_KEY, key);
-            if (!Utility.isNullOrEmpty(contentTag)) {
-                header.put(HEADER_CACHE_CONTENT_TAG_KEY, contentTag);
-            }
-
-            StreamHeader.writeHeader(buffered, header);
+            buffered.write(headerBytes);
 
             success = true;
             return buffered;
-        } catch (JSONException e) {
-            // JSON is an implementation detail of the cache, so don't let JSON exceptions out.
-            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error creating JSON header for cache file: " + e);
-            throw new IOException(e.getMessage());
         } finally {
             if (!success) {
                 buffered.close();
@@ -219,24 +357,71 @@ public final class FileLruCache {
         }
     }
 
+    // Rewrites a file that was written with an older header version, so later hits read the current header.
+    private void postMigrate(final File file, final String key, final String contentTag) {
+        Settings.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                InputStream input = null;
+                OutputStream output = null;
+                try {
+                    input = new BufferedInputStream(new FileInputStream(file), Utility.DEFAULT_STREAM_BUFFER_SIZE);
+                    if (StreamHeader.readHeader(input) == null) {
+                        return;
+                    }
+                    output = openPutStream(key, contentTag);
+
+                    byte[] buffer = new byte[Utility.DEFAULT_STREAM_BUFFER_SIZE];
+                    int count;
+                    while ((count = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, count);
+                    }
+                    Logger.log(LoggingBehavior.CACHE, TAG, "Migrated header of " + file.getName());
+                } catch (IOException e) {
+                    Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error migrating cache file header: " + e);
+                } finally {
+                    Utility.closeQuietly(input);
+                    Utility.closeQuietly(output);
+                }
+            }
+        });
+    }
+
     public void clearCache() {
         // get the current directory listing of files to delete
-        final File[] filesToDelete = directory.listFiles(BufferFile.excludeBufferFiles());
+        final List<File> filesToDelete = new ArrayList<File>();
+        for (Shard shard : shards) {
+            File[] files = shard.directory.listFiles(BufferFile.excludeBufferFiles());
+            if (files != null) {
+                filesToDelete.addAll(Arrays.asList(files));
+            }
+        }
         lastClearCacheTime.set(System.currentTimeMillis());
-        if (filesToDelete != null) {
+        for (Shard shard : shards) {
+            shard.clearIndex();
+        }
+        if (!filesToDelete.isEmpty()) {
             Settings.getExecutor().execute(new Runnable() {
                 @Override
                 public void run() {
                     for (File file : filesToDelete) {
-                        file.delete();
+                        if (file.isFile()) {
+                            file.delete();
+                        }
                     }
                 }
             });
         }
     }
 
-    private void renameToTargetAndTrim(String key, File buffer) {
-        final File target = new File(directory, Utility.md5hash(key));
+    private void renameToTargetAndTrim(String key, String contentTag, File buffer) {
+        String fileName = Utility.md5hash(key);
+        if (fileName == null) {
+            buffer.delete();
+            return;
+        }
+        Shard shard = getShard(key, fileName);
+        final File target = new File(shard.directory, fileName);
 
         // This is triggered by close().  By the time close() returns, the file should be cached, so this needs to
         // happen synchronously on this thread.
@@ -245,25 +430,21 @@ public final class FileLruCache {
         // operation.  Avoiding the cost of holding the lock across the file operation seems worth this cost.
         if (!buffer.renameTo(target)) {
             buffer.delete();
+            return;
         }
 
-        postTrim();
-    }
-
-    // Opens an output stream for the key, and creates an input stream wrapper to copy
-    // the contents of input into the new output stream.  The effect is to store a
-    // copy of input, and associate that data with key.
-    public InputStream interceptAndPut(String key, InputStream input) throws IOException {
-        OutputStream output = openPutStream(key);
-        return new CopyingInputStream(input, output);
-    }
+        synchronized (shard.lock) {
+            shard.loadIndexIfNeeded();
+            IndexEntry entry = new IndexEntry(target.length(), target.lastModified());
+            entry.setHeader(key, Utility.isNullOrEmpty(contentTag) ? null : contentTag);
+            shard.addToIndex(fileName, entry);
+        }
 
-    public String toString() {
-        return "{FileLruCache:" + " tag:" + this.tag + " file:" + this.directory.getName() + "}";
+        postTrim();
     }
 
     private void postTrim() {
-        synchronized (lock) {
+        synchronized (trimLock) {
             if (!isTrimPending) {
                 isTrimPending = true;
                 Settings.getExecutor().execute(new Runnable() {
@@ -279,33 +460,175 @@ public final class FileLruCache {
     private void trim() {
         try {
             Logger.log(LoggingBehavior.CACHE, TAG, "trim started");
-            PriorityQueue<ModifiedFile> heap = new PriorityQueue<ModifiedFile>();
-            long size = 0;
-            long count = 0;
-            File[] filesToTrim =this.directory.listFiles(BufferFile.excludeBufferFiles());
-            if (filesToTrim != null) {
-                for (File file : filesToTrim) {
-                    ModifiedFile modified = new ModifiedFile(file);
-                    heap.add(modified);
-                    Logger.log(LoggingBehavior.CACHE, TAG, "  trim considering time=" + Long.valueOf(modified.getModified())
-                            + " name=" + modified.getFile().getName());
-
-                    size += file.length();
-                    count++;
+            // The totals only cover loaded indexes.
+            for (Shard shard : shards) {
+                synchronized (shard.lock) {
+                    shard.loadIndexIfNeeded();
+                }
+            }
+
+            List<File> filesToDelete = new ArrayList<File>();
+            while ((indexedByteCount.get() > limits.getByteCount())
+                    || (indexedFileCount.get() > limits.getFileCount())) {
+                // Each shard's index is in access order, so the least recently used file in the cache is the
+                // eldest entry of one of the shards.
+                Shard oldestShard = null;
+                long oldestAccessTime = Long.MAX_VALUE;
+                for (Shard shard : shards) {
+                    long accessTime = shard.getEldestAccessTime();
+                    if (accessTime < oldestAccessTime) {
+                        oldestShard = shard;
+                        oldestAccessTime = accessTime;
+                    }
+                }
+                if (oldestShard == null) {
+                    break;
+                }
+
+                String fileName = oldestShard.removeEldest();
+                if (fileName != null) {
+                    filesToDelete.add(new File(oldestShard.directory, fileName));
                 }
             }
 
-            while ((size > limits.getByteCount()) || (count > limits.getFileCount())) {
-                File file = heap.remove().getFile();
+            for (File file : filesToDelete) {
                 Logger.log(LoggingBehavior.CACHE, TAG, "  trim removing " + file.getName());
-                size -= file.length();
-                count--;
                 file.delete();
             }
         } finally {
-            synchronized (lock) {
+            synchronized (trimLock) {
                 isTrimPending = false;
-                lock.notifyAll();
+                trimLock.notifyAll();
+            }
+        }
+    }
+
+    // Opens an output stream for the key, and creates an input stream wrapper to copy
+    // the contents of input into the new output stream.  The effect is to store a
+    // copy of input, and associate that data with key.
+    public InputStream interceptAndPut(String key, InputStream input) throws IOException {
+        OutputStream output = openPutStream(key);
+        return new CopyingInputStream(input, output);
+    }
+
+    public String toString() {
+        return "{FileLruCache:" + " tag:" + this.tag + " file:" + this.directory.getName() + " shards:"
+                + shards.length + "}";
+    }
+
+    // One subdirectory of the cache, with its own lock and index.  Its files count towards the limits of the
+    // whole cache.
+    private final class Shard {
+        final File directory;
+        final Object lock = new Object();
+        // Guarded by lock.  Keyed by file name, ordered from least to most recently used.
+        private final LinkedHashMap<String, IndexEntry> index =
+                new LinkedHashMap<String, IndexEntry>(16, 0.75f, true);
+        private boolean isIndexLoaded;
+
+        Shard(File directory) {
+            this.directory = directory;
+        }
+
+        // Must be called with lock held.
+        void loadIndexIfNeeded() {
+            if (isIndexLoaded) {
+                return;
+            }
+            isIndexLoaded = true;
+
+            File[] files = this.directory.listFiles(BufferFile.excludeBufferFiles());
+            if (files == null) {
+                return;
+            }
+
+            // Insert from least to most recently used, so the index starts out in the same order as the old
+            // lastModified-based trim.
+            List<ModifiedFile> modifiedFiles = new ArrayList<ModifiedFile>(files.length);
+            for (File file : files) {
+                if (file.isFile()) {
+                    modifiedFiles.add(new ModifiedFile(file));
+                }
+            }
+            Collections.sort(modifiedFiles);
+            for (ModifiedFile modified : modifiedFiles) {
+                File file = modified.getFile();
+                IndexEntry entry = new IndexEntry(file.length(), modified.getModified());
+                // The file's last modified time is the best record of when it was last used before this run.
+                entry.accessTime = modified.getModified();
+                putInIndex(file.getName(), entry);
+            }
+            Logger.log(LoggingBehavior.CACHE, TAG, directory.getName() + " index loaded with "
+                    + Integer.valueOf(index.size()) + " files");
+        }
+
+        // Must be called with lock held.  Returns the entry for the file, if any, and marks it as most recently used.
+        IndexEntry getFromIndex(String fileName) {
+            IndexEntry entry = index.get(fileName);
+            if (entry != null) {
+                entry.accessTime = System.currentTimeMillis();
+            }
+            return entry;
+        }
+
+        // Must be called with lock held.
+        void addToIndex(String fileName, IndexEntry entry) {
+            entry.accessTime = System.currentTimeMillis();
+            putInIndex(fileName, entry);
+        }
+
+        private void putInIndex(String fileName, IndexEntry entry) {
+            IndexEntry previous = index.put(fileName, entry);
+            if (previous != null) {
+                indexedByteCount.addAndGet(-previous.size);
+                indexedFileCount.decrementAndGet();
+            }
+            indexedByteCount.addAndGet(entry.size);
+            indexedFileCount.incrementAndGet();
+        }
+
+        void removeFromIndex(String fileName, IndexEntry entry) {
+            synchronized (lock) {
+                // Only remove it if it wasn't replaced in the meantime.
+                if (index.get(fileName) == entry) {
+                    index.remove(fileName);
+                    indexedByteCount.addAndGet(-entry.size);
+                    indexedFileCount.decrementAndGet();
+                }
+            }
+        }
+
+        void clearIndex() {
+            synchronized (lock) {
+                for (IndexEntry entry : index.values()) {
+                    indexedByteCount.addAndGet(-entry.size);
+                    indexedFileCount.decrementAndGet();
+                }
+                index.clear();
+            }
+        }
+
+        // Returns when the least recently used file in this shard was last used, or Long.MAX_VALUE if the shard
+        // is empty.
+        long getEldestAccessTime() {
+            synchronized (lock) {
+                Iterator<IndexEntry> iterator = index.values().iterator();
+                return iterator.hasNext() ? iterator.next().accessTime : Long.MAX_VALUE;
+            }
+        }
+
+        // Removes the least recently used file from the index and returns its name, or null if the shard is empty.
+        String removeEldest() {
+            synchronized (lock) {
+                Iterator<Map.Entry<String, IndexEntry>> iterator = index.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    return null;
+                }
+                Map.Entry<String, IndexEntry> eldest = iterator.next();
+                iterator.remove();
+                indexedByteCount.addAndGet(-eldest.getValue().size);
+                indexedFileCount.decrementAndGet();
+                return eldest.getKey();
             }
         }
     }
@@ -348,38 +671,171 @@ public final class FileLruCache {
         }
     }
 
-    // Treats the first part of a stream as a header, reads/writes it as a JSON blob, and
-    // leaves the stream positioned exactly after the header.
+    // Treats the first part of a stream as a header, reads/writes it, and leaves the stream positioned exactly
+    // after the header.
     //
-    // The format is as follows:
+    // The current format (version 1) is as follows:
+    //     byte: meaning
+    // ---------------------------------
+    //        0: version number
+    //      1-8: big-endian content length, i.e. the number of bytes after the header; written when the stream
+    //           is closed
+    //     9-12: big-endian CRC32 of the rest of the header, from byte 13 on
+    //    13-16: big-endian key length
+    //      ...: UTF-8 key
+    //  4 bytes: big-endian content tag length, or -1 if there is no content tag
+    //      ...: UTF-8 content tag
+    //      ...: stream data
+    //
+    // Version 0 headers are still read, so files written by older versions remain usable until they are
+    // migrated:
     //     byte: meaning
     // ---------------------------------
     //        0: version number
     //      1-3: big-endian JSON header blob size
     // 4-size+4: UTF-8 JSON header blob
     //      ...: stream data
-    private static final class StreamHeader {
-        private static final int HEADER_VERSION = 0;
+    static final class StreamHeader {
+        static final int HEADER_VERSION = 1;
+        private static final int JSON_HEADER_VERSION = 0;
+        private static final String CHARSET = "UTF-8";
+        private static final int CONTENT_LENGTH_OFFSET = 1;
+        private static final int FIXED_LENGTH = 13;
+        // Anything longer than this is a corrupt header rather than a real key or tag.
+        private static final int MAX_STRING_LENGTH = 64 * 1024;
+
+        static final class Header {
+            final int version;
+            final String key;
+            final String contentTag;
+            final long contentLength;
+            final int length;
+
+            Header(int version, String key, String contentTag, long contentLength, int length) {
+                this.version = version;
+                this.key = key;
+                this.contentTag = contentTag;
+                this.contentLength = contentLength;
+                this.length = length;
+            }
+        }
 
-        static void writeHeader(OutputStream stream, JSONObject header) throws IOException {
-            String headerString = header.toString();
-            byte[] headerBytes = headerString.getBytes();
+        static byte[] encodeHeader(String key, String contentTag) throws IOException {
+            byte[] keyBytes = key.getBytes(CHARSET);
+            byte[] tagBytes = (contentTag != null) ? contentTag.getBytes(CHARSET) : null;
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    FIXED_LENGTH + 8 + keyBytes.length + ((tagBytes != null) ? tagBytes.length : 0));
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(HEADER_VERSION);
+            output.writeLong(0); // content length, filled in by writeContentLength
+            output.writeInt(0); // checksum, filled in below
+            output.writeInt(keyBytes.length);
+            output.write(keyBytes);
+            if (tagBytes != null) {
+                output.writeInt(tagBytes.length);
+                output.write(tagBytes);
+            } else {
+                output.writeInt(-1);
+            }
+            output.flush();
 
-            // Write version number and big-endian header size
-            stream.write(HEADER_VERSION);
-            stream.write((headerBytes.length >> 16) & 0xff);
-            stream.write((headerBytes.length >> 8) & 0xff);
-            stream.write((headerBytes.length >> 0) & 0xff);
+            byte[] header = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(header, FIXED_LENGTH, header.length - FIXED_LENGTH);
+            writeInt(header, FIXED_LENGTH - 4, (int) crc.getValue());
+            return header;
+        }
 
-            stream.write(headerBytes);
+        // Fills in the content length of a completely written file.  Returns false if the file could not be
+        // updated, in which case it should not be used.
+        static boolean writeContentLength(File file, int headerLength) {
+            RandomAccessFile randomAccessFile = null;
+            try {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                randomAccessFile.seek(CONTENT_LENGTH_OFFSET);
+                randomAccessFile.writeLong(randomAccessFile.length() - headerLength);
+                return true;
+            } catch (IOException e) {
+                Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error writing content length: " + e);
+                return false;
+            } finally {
+                Utility.closeQuietly(randomAccessFile);
+            }
         }
 
-        static JSONObject readHeader(InputStream stream) throws IOException {
+        static Header readHeader(InputStream stream) throws IOException {
             int version = stream.read();
-            if (version != HEADER_VERSION) {
+            if (version == JSON_HEADER_VERSION) {
+                return readJsonHeader(stream);
+            } else if (version != HEADER_VERSION) {
+                return null;
+            }
+
+            DataInputStream input = new DataInputStream(stream);
+            try {
+                long contentLength = input.readLong();
+                int checksum = input.readInt();
+
+                CRC32 crc = new CRC32();
+                byte[] lengthBytes = new byte[4];
+                input.readFully(lengthBytes);
+                crc.update(lengthBytes);
+                byte[] keyBytes = readBytes(input, readInt(lengthBytes, 0));
+                if (keyBytes == null) {
+                    return null;
+                }
+                crc.update(keyBytes);
+
+                input.readFully(lengthBytes);
+                crc.update(lengthBytes);
+                int tagLength = readInt(lengthBytes, 0);
+                byte[] tagBytes = null;
+                if (tagLength != -1) {
+                    tagBytes = readBytes(input, tagLength);
+                    if (tagBytes == null) {
+                        return null;
+                    }
+                    crc.update(tagBytes);
+                }
+
+                if ((int) crc.getValue() != checksum) {
+                    Logger.log(LoggingBehavior.CACHE, TAG, "readHeader: checksum mismatch");
+                    return null;
+                }
+
+                int length = FIXED_LENGTH + 8 + keyBytes.length + ((tagBytes != null) ? tagBytes.length : 0);
+                return new Header(version, new String(keyBytes, CHARSET),
+                        (tagBytes != null) ? new String(tagBytes, CHARSET) : null, contentLength, length);
+            } catch (EOFException e) {
+                Logger.log(LoggingBehavior.CACHE, TAG, "readHeader: unexpected end of stream");
                 return null;
             }
+        }
+
+        private static byte[] readBytes(DataInputStream input, int length) throws IOException {
+            if (length < 0 || length > MAX_STRING_LENGTH) {
+                Logger.log(LoggingBehavior.CACHE, TAG, "readHeader: invalid length " + Integer.valueOf(length));
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return bytes;
+        }
+
+        private static int readInt(byte[] bytes, int offset) {
+            return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                    | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+        }
+
+        private static void writeInt(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) (value >> 24);
+            bytes[offset + 1] = (byte) (value >> 16);
+            bytes[offset + 2] = (byte) (value >> 8);
+            bytes[offset + 3] = (byte) value;
+        }
 
+        private static Header readJsonHeader(InputStream stream) throws IOException {
             int headerSize = 0;
             for (int i = 0; i < 3; i++) {
                 int b = stream.read();
@@ -419,7 +875,8 @@ public final class FileLruCache {
                 throw new IOException(e.getMessage());
             }
 
-            return header;
+            return new Header(JSON_HEADER_VERSION, header.optString(HEADER_CACHEKEY_KEY),
+                    header.optString(HEADER_CACHE_CONTENT_TAG_KEY, null), -1, 4 + headerSize);
         }
     }
 
@@ -551,6 +1008,7 @@ public final class FileLruCache {
     public static final class Limits {
         private int byteCount;
         private int fileCount;
+        private int shardCount;
 
         public Limits() {
             // A Samsung Galaxy Nexus can create 1k files in half a second.  By the time
@@ -559,9 +1017,15 @@ public final class FileLruCache {
             // a single directory.
             //
             // Following a git-like strategy where we partition MD5-named files based on
-            // the first 2 characters is slower across the board.
+            // the first 2 characters is slower across the board.  That measurement was about
+            // the cost of listing 256 directories; shards (see setShardCount) are a handful of
+            // directories whose purpose is to split the lock, not to keep directories small,
+            // and their total size is still capped by these limits.  The gain from sharding
+            // depends on how many threads hit the cache at once, so it's measured by
+            // FileLruCacheTests.testBenchmarkConcurrentGet on the device at hand.
             this.fileCount = 1024;
             this.byteCount = 1024 * 1024;
+            this.shardCount = 1;
         }
 
         int getByteCount() {
@@ -572,6 +1036,10 @@ public final class FileLruCache {
             return fileCount;
         }
 
+        int getShardCount() {
+            return shardCount;
+        }
+
         void setByteCount(int n) {
             if (n < 0) {
                 throw new InvalidParameterException("Cache byte-count limit must be >= 0");
@@ -585,6 +1053,15 @@ public final class FileLruCache {
             }
             fileCount = n;
         }
+
+        // Spreads the cache over n independently locked subdirectories.  The byte and file limits still apply to
+        // the cache as a whole.
+        void setShardCount(int n) {
+            if (n < 1 || n > MAX_SHARD_COUNT) {
+                throw new InvalidParameterException("Cache shard count must be between 1 and " + MAX_SHARD_COUNT);
+            }
+            shardCount = n;
+        }
     }
 
     // Caches the result of lastModified during sort/heap operations
@@ -637,6 +1114,67 @@ public final class FileLruCache {
         }
     }
 
+    // What the index knows about a cache file.  The key and tag are only known once the file has been written
+    // or read during this run; until then, get() has to check the file's header.  Guarded by its shard's lock.
+    private final static class IndexEntry {
+        final long size;
+        private long lastModified;
+        private boolean isHeaderKnown;
+        private String key;
+        private String contentTag;
+        private boolean isMigrationStarted;
+        // When the file was last used, so trim() can tell which shard's least recently used file is the oldest.
+        long accessTime;
+
+        IndexEntry(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        void setHeader(String key, String contentTag) {
+            this.key = key;
+            this.contentTag = contentTag;
+            this.isHeaderKnown = true;
+        }
+
+        boolean mayMatch(String key, String contentTag) {
+            if (!isHeaderKnown) {
+                return true;
+            }
+            return this.key.equals(key) && Utility.areObjectsEqual(this.contentTag, contentTag);
+        }
+
+        // Returns true only for the first caller, so a file is migrated once.
+        boolean startMigration() {
+            if (isMigrationStarted) {
+                return false;
+            }
+            isMigrationStarted = true;
+            return true;
+        }
+
+        synchronized boolean shouldUpdateLastModified(long accessTime) {
+            if (accessTime - lastModified < LAST_MODIFIED_UPDATE_INTERVAL_MILLIS) {
+                return false;
+            }
+            lastModified = accessTime;
+            return true;
+        }
+    }
+
+    // An open cache file, positioned just after its header.
+    private static final class CacheHit {
+        final FileInputStream input;
+        final BufferedInputStream stream;
+        final StreamHeader.Header header;
+
+        CacheHit(FileInputStream input, BufferedInputStream stream, StreamHeader.Header header) {
+            this.input = input;
+            this.stream = stream;
+            this.header = header;
+        }
+    }
+
     private interface StreamCloseCallback {
         void onClose();
     }
@@ -16,13 +16,16 @@
 
 package com.facebook.internal;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import com.facebook.FacebookException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -34,7 +37,9 @@ import java.util.*;
 
 public class ImageDownloader {
     private static final int DOWNLOAD_QUEUE_MAX_CONCURRENT = WorkQueue.DEFAULT_MAX_CONCURRENT;
-    private static final int CACHE_READ_QUEUE_MAX_CONCURRENT = 2;
+    // Cache reads from different shards don't contend, so let them use every core.
+    private static final int CACHE_READ_QUEUE_MAX_CONCURRENT =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
     private static Handler handler;
     private static WorkQueue downloadQueue = new WorkQueue(DOWNLOAD_QUEUE_MAX_CONCURRENT);
     private static WorkQueue cacheReadQueue = new WorkQueue(CACHE_READ_QUEUE_MAX_CONCURRENT);
@@ -56,13 +61,18 @@ public class ImageDownloader {
         // redirect response and the Url might change. We can't create our own new ImageRequests
         // for these changed Urls since the caller might be doing some book-keeping with the request's
         // object reference. So we keep the old references and just map them to new urls in the downloader
+        BitmapPool.registerForTrimMemory(request.getContext());
+        if (deliverFromMemory(request)) {
+            return;
+        }
+
         RequestKey key = new RequestKey(request.getImageUri(), request.getCallerTag());
         synchronized (pendingRequests) {
             DownloaderContext downloaderContext = pendingRequests.get(key);
             if (downloaderContext != null) {
                 downloaderContext.request = request;
                 downloaderContext.isCancelled = false;
-                downloaderContext.workItem.moveToFront();
+                reprioritize(downloaderContext.workItem, request.getPriority());
             } else {
                 enqueueCacheRead(request, key, request.isCachedRedirectAllowed());
             }
@@ -94,20 +104,80 @@ public class ImageDownloader {
     }
 
     public static void prioritizeRequest(ImageRequest request) {
+        setRequestPriority(request, ImageRequest.Priority.VISIBLE);
+    }
+
+    // Moves a pending request to another priority.  Raising a request to VISIBLE puts it ahead of every other
+    // pending request; lowering it puts it behind the other requests at its new priority.
+    public static void setRequestPriority(ImageRequest request, ImageRequest.Priority priority) {
         RequestKey key = new RequestKey(request.getImageUri(), request.getCallerTag());
         synchronized (pendingRequests) {
             DownloaderContext downloaderContext = pendingRequests.get(key);
             if (downloaderContext != null) {
-                downloaderContext.workItem.moveToFront();
+                reprioritize(downloaderContext.workItem, priority);
             }
         }
     }
 
+    private static void reprioritize(WorkQueue.WorkItem workItem, ImageRequest.Priority priority) {
+        if (priority == ImageRequest.Priority.VISIBLE) {
+            workItem.moveToFront();
+        } else {
+            workItem.setPriority(getWorkQueuePriority(priority));
+        }
+    }
+
+    private static int getWorkQueuePriority(ImageRequest.Priority priority) {
+        switch (priority) {
+            case PREFETCH:
+                return WorkQueue.PRIORITY_PREFETCH;
+            case BACKGROUND:
+                return WorkQueue.PRIORITY_BACKGROUND;
+            default:
+                return WorkQueue.PRIORITY_VISIBLE;
+        }
+    }
+
     public static void clearCache(Context context) {
+        ImageMemoryCache.clear();
         ImageResponseCache.clearCache(context);
         UrlRedirectCache.clearCache(context);
     }
 
+    // Completes the request right away, on the calling thread, if its image is already in memory.
+    private static boolean deliverFromMemory(ImageRequest request) {
+        URI uri = request.getImageUri();
+        int targetWidth = request.getTargetWidth();
+        int targetHeight = request.getTargetHeight();
+        Bitmap bitmap = null;
+        boolean isCachedRedirect = false;
+        if (request.isCachedRedirectAllowed()) {
+            // This runs on the caller's thread, so only look at redirects that are already in memory.
+            URI redirectUri = UrlRedirectCache.getLoadedRedirectedUri(uri);
+            if (redirectUri != null) {
+                bitmap = ImageMemoryCache.get(redirectUri, targetWidth, targetHeight);
+                isCachedRedirect = bitmap != null;
+            }
+        }
+        if (bitmap == null) {
+            bitmap = ImageMemoryCache.get(uri, targetWidth, targetHeight);
+        }
+        if (bitmap == null) {
+            return false;
+        }
+
+        // Any earlier request for the same image and caller is superseded by this one.
+        cancelRequest(request);
+
+        ImageRequest.Callback callback = request.getCallback();
+        if (callback != null) {
+            // Another caller may already be showing this bitmap; see BitmapPool.
+            BitmapPool.retain(bitmap);
+            callback.onCompleted(new ImageResponse(request, null, isCachedRedirect, bitmap));
+        }
+        return true;
+    }
+
     private static void enqueueCacheRead(ImageRequest request, RequestKey key, boolean allowCachedRedirects) {
         enqueueRequest(
                 request,
@@ -141,7 +211,8 @@ public class ImageDownloader {
             // It is also necessary to hold on to the lock until after the workItem is created, since
             // calls to cancelRequest or prioritizeRequest might come in and expect a registered
             // request to have a workItem available as well.
-            downloaderContext.workItem = workQueue.addActiveWorkItem(workItem);
+            downloaderContext.workItem = workQueue.addActiveWorkItem(
+                    workItem, getWorkQueuePriority(request.getPriority()), true);
         }
     }
 
@@ -160,6 +231,8 @@ public class ImageDownloader {
                 getHandler().post(new Runnable() {
                     @Override
                     public void run() {
+                        // See BitmapPool; the callback owns one reference to the bitmap.
+                        BitmapPool.retain(bitmap);
                         ImageResponse response = new ImageResponse(
                                 request,
                                 error,
@@ -175,8 +248,9 @@ public class ImageDownloader {
     private static void readFromCache(RequestKey key, Context context, boolean allowCachedRedirects) {
         InputStream cachedStream = null;
         boolean isCachedRedirect = false;
+        URI redirectUri = null;
         if (allowCachedRedirects) {
-            URI redirectUri = UrlRedirectCache.getRedirectedUri(context, key.uri);
+            redirectUri = UrlRedirectCache.getRedirectedUri(context, key.uri);
             if (redirectUri != null) {
                 cachedStream = ImageResponseCache.getCachedImageStream(redirectUri, context);
                 isCachedRedirect = cachedStream != null;
@@ -189,9 +263,20 @@ public class ImageDownloader {
 
         if (cachedStream != null) {
             // We were able to find a cached image.
-            Bitmap bitmap = BitmapFactory.decodeStream(cachedStream);
-            Utility.closeQuietly(cachedStream);
-            issueResponse(key, null, bitmap, isCachedRedirect);
+            Bitmap bitmap = null;
+            Exception error = null;
+            try {
+                if (isCachedRedirect) {
+                    bitmap = decodeBitmap(cachedStream, getPendingRequest(key), redirectUri);
+                } else {
+                    bitmap = decodeBitmap(cachedStream, getPendingRequest(key), key.uri);
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                Utility.closeQuietly(cachedStream);
+            }
+            issueResponse(key, error, bitmap, isCachedRedirect);
         } else {
             // Once the old downloader context is removed, we are thread-safe since this is the
             // only reference to it
@@ -240,7 +325,7 @@ public class ImageDownloader {
                 case HttpURLConnection.HTTP_OK:
                     // image should be available
                     stream = ImageResponseCache.interceptAndCacheImageStream(context, connection);
-                    bitmap = BitmapFactory.decodeStream(stream);
+                    bitmap = decodeBitmap(stream, getPendingRequest(key), key.uri);
                     break;
 
                 default:
@@ -271,6 +356,70 @@ public class ImageDownloader {
         }
     }
 
+    // Decodes the image at the smallest power-of-two reduction that still covers the request's target size,
+    // reusing a pooled bitmap where possible, and keeps the result in memory under cacheUri.
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Bitmap decodeBitmap(InputStream stream, ImageRequest request, URI cacheUri) throws IOException {
+        if (request == null || !request.hasTargetSize()) {
+            Bitmap bitmap = BitmapFactory.decodeStream(stream);
+            ImageMemoryCache.put(cacheUri, bitmap, true);
+            return bitmap;
+        }
+
+        // The stream is read twice, once for the bounds and once for the pixels.  Mapped cache files can be
+        // rewound directly; network streams, which are being copied into the cache as they are read, are
+        // buffered first.
+        if (!stream.markSupported()) {
+            stream = new ByteArrayInputStream(Utility.readStreamToBytes(stream));
+        }
+        stream.mark(Integer.MAX_VALUE);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(stream, null, options);
+        stream.reset();
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight,
+                request.getTargetWidth(), request.getTargetHeight());
+        if (BitmapPool.isSupported()) {
+            // Mutable so that views can give it back to the pool once they are done with it.
+            options.inMutable = true;
+            options.inBitmap = BitmapPool.get(options.outWidth, options.outHeight, options.inSampleSize);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(stream, null, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image after all.
+            stream.reset();
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeStream(stream, null, options);
+        }
+        ImageMemoryCache.put(cacheUri, bitmap, options.inSampleSize == 1);
+        return bitmap;
+    }
+
+    private static int getSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        int nextWidth = width / 2;
+        int nextHeight = height / 2;
+        while (nextWidth > 0 && nextHeight > 0 && nextWidth >= targetWidth && nextHeight >= targetHeight) {
+            sampleSize *= 2;
+            nextWidth /= 2;
+            nextHeight /= 2;
+        }
+        return sampleSize;
+    }
+
+    private static ImageRequest getPendingRequest(RequestKey key) {
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            return (downloaderContext != null) ? downloaderContext.request : null;
+        }
+    }
+
     private static synchronized Handler getHandler() {
         if (handler == null) {
             handler = new Handler(Looper.getMainLooper());
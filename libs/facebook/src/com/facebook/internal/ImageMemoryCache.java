@@ -0,0 +1,152 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Keeps recently decoded images in memory, in front of ImageResponseCache, so an image that is already on screen
+ * can be handed out again without reading or decoding it. Bitmaps are keyed by their post-redirect URI; the requested
+ * URI is resolved through UrlRedirectCache.
+ * A bitmap that was decoded at a reduced size is only handed out to requests whose target size it covers.
+ */
+public final class ImageMemoryCache {
+    // Guarded by itself.  The bitmaps currently in the cache, so BitmapPool doesn't reuse one that may still be
+    // handed out.
+    private static final Map<Bitmap, Boolean> residentBitmaps = new IdentityHashMap<Bitmap, Boolean>();
+
+    private static final LruCache<URI, Entry> bitmaps = new LruCache<URI, Entry>(getDefaultMaxSize()) {
+        @Override
+        protected int sizeOf(URI key, Entry value) {
+            return getByteCount(value.bitmap);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, URI key, Entry oldValue, Entry newValue) {
+            if (newValue == null || newValue.bitmap != oldValue.bitmap) {
+                synchronized (residentBitmaps) {
+                    residentBitmaps.remove(oldValue.bitmap);
+                }
+            }
+        }
+    };
+
+    private ImageMemoryCache() {
+    }
+
+    // Returns a cached bitmap for uri that is at least targetWidth by targetHeight, or null.  With no target
+    // size, only a full-size bitmap will do.
+    static Bitmap get(URI uri, int targetWidth, int targetHeight) {
+        Entry entry = (uri != null) ? bitmaps.get(uri) : null;
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isFullSize) {
+            return entry.bitmap;
+        }
+        boolean hasTargetSize = targetWidth != ImageRequest.UNSPECIFIED_DIMENSION ||
+                targetHeight != ImageRequest.UNSPECIFIED_DIMENSION;
+        if (hasTargetSize && entry.bitmap.getWidth() >= targetWidth && entry.bitmap.getHeight() >= targetHeight) {
+            return entry.bitmap;
+        }
+        return null;
+    }
+
+    static void put(URI uri, Bitmap bitmap, boolean isFullSize) {
+        if (uri != null && bitmap != null) {
+            synchronized (residentBitmaps) {
+                residentBitmaps.put(bitmap, Boolean.TRUE);
+            }
+            bitmaps.put(uri, new Entry(bitmap, isFullSize));
+        }
+    }
+
+    static boolean contains(Bitmap bitmap) {
+        synchronized (residentBitmaps) {
+            return residentBitmaps.containsKey(bitmap);
+        }
+    }
+
+    // Follows ComponentCallbacks2.onTrimMemory: the cached bitmaps are dropped once the app is in the background
+    // and the system is starting to kill background processes.
+    static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            bitmaps.evictAll();
+        }
+    }
+
+    static void clear() {
+        bitmaps.evictAll();
+    }
+
+    public static int getHitCount() {
+        return bitmaps.hitCount();
+    }
+
+    public static int getMissCount() {
+        return bitmaps.missCount();
+    }
+
+    public static int getEvictionCount() {
+        return bitmaps.evictionCount();
+    }
+
+    public static int getSizeInBytes() {
+        return bitmaps.size();
+    }
+
+    public static int getMaxSizeInBytes() {
+        return bitmaps.maxSize();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int getByteCount(Bitmap bitmap) {
+        // A bitmap that was decoded into a larger one with inBitmap still holds the larger allocation.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        // Bitmap.getByteCount is API 12
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static final class Entry {
+        final Bitmap bitmap;
+        final boolean isFullSize;
+
+        Entry(Bitmap bitmap, boolean isFullSize) {
+            this.bitmap = bitmap;
+            this.isFullSize = isFullSize;
+        }
+    }
+
+    private static int getDefaultMaxSize() {
+        // An eighth of the heap, which is a few screens worth of thumbnails even on small devices.
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+    }
+}
@@ -33,6 +33,14 @@ public class ImageRequest {
         void onCompleted(ImageResponse response);
     }
 
+    // How urgently an image is needed.  Visible images are downloaded first; prefetches and background
+    // requests are served as capacity allows.
+    public enum Priority {
+        VISIBLE,
+        PREFETCH,
+        BACKGROUND
+    }
+
     public static final int UNSPECIFIED_DIMENSION = 0;
 
     private static final String PROFILEPIC_URL_FORMAT =
@@ -47,6 +55,9 @@ public class ImageRequest {
     private Callback callback;
     private boolean allowCachedRedirects;
     private Object callerTag;
+    private int targetWidth;
+    private int targetHeight;
+    private Priority priority;
 
     public static URI getProfilePictureUrl(
             String userId,
@@ -84,6 +95,9 @@ public class ImageRequest {
         this.callback = builder.callback;
         this.allowCachedRedirects = builder.allowCachedRedirects;
         this.callerTag = builder.callerTag == null ? new Object() : builder.callerTag;
+        this.targetWidth = builder.targetWidth;
+        this.targetHeight = builder.targetHeight;
+        this.priority = builder.priority;
     }
 
     public Context getContext() {
@@ -106,6 +120,22 @@ public class ImageRequest {
         return callerTag;
     }
 
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public boolean hasTargetSize() {
+        return targetWidth != UNSPECIFIED_DIMENSION || targetHeight != UNSPECIFIED_DIMENSION;
+    }
+
     public static class Builder {
         // Required
         private Context context;
@@ -115,6 +145,9 @@ public class ImageRequest {
         private Callback callback;
         private boolean allowCachedRedirects;
         private Object callerTag;
+        private int targetWidth = UNSPECIFIED_DIMENSION;
+        private int targetHeight = UNSPECIFIED_DIMENSION;
+        private Priority priority = Priority.VISIBLE;
 
         public Builder(Context context, URI imageUrl) {
             Validate.notNull(imageUrl, "imageUrl");
@@ -137,6 +170,20 @@ public class ImageRequest {
             return this;
         }
 
+        // The size, in pixels, the image will be displayed at.  The image is decoded at the smallest
+        // power-of-two reduction that still covers it.  Either dimension may be UNSPECIFIED_DIMENSION.
+        public Builder setTargetSize(int targetWidth, int targetHeight) {
+            this.targetWidth = Math.max(targetWidth, UNSPECIFIED_DIMENSION);
+            this.targetHeight = Math.max(targetHeight, UNSPECIFIED_DIMENSION);
+            return this;
+        }
+
+        public Builder setPriority(Priority priority) {
+            Validate.notNull(priority, "priority");
+            this.priority = priority;
+            return this;
+        }
+
         public ImageRequest build() {
             return new ImageRequest(this);
         }
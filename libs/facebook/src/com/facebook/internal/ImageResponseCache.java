@@ -27,15 +27,21 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 class ImageResponseCache {
     static final String TAG = ImageResponseCache.class.getSimpleName();
+    // Image lists read many cache entries at once, one per core (see ImageDownloader), so spread them over
+    // independently locked shards.  The cache's limits still apply to all shards together.
+    private static final int SHARD_COUNT = 4;
 
     private volatile static FileLruCache imageCache;
 
     synchronized static FileLruCache getCache(Context context) throws IOException{
         if (imageCache == null) {
-            imageCache = new FileLruCache(context.getApplicationContext(), TAG, new FileLruCache.Limits());
+            FileLruCache.Limits limits = new FileLruCache.Limits();
+            limits.setShardCount(SHARD_COUNT);
+            imageCache = new FileLruCache(context.getApplicationContext(), TAG, limits);
         }
         return imageCache;
     }
@@ -48,7 +54,10 @@ class ImageResponseCache {
             if (isCDNURL(url)) {
                 try {
                     FileLruCache cache = getCache(context);
-                    imageStream = cache.get(url.toString());
+                    ByteBuffer mapped = cache.getMapped(url.toString());
+                    if (mapped != null) {
+                        imageStream = new ByteBufferInputStream(mapped);
+                    }
                 } catch (IOException e) {
                     Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, e.toString());
                 }
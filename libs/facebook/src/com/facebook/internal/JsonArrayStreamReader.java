@@ -0,0 +1,202 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import org.json.JSONException;
+
+import java.io.*;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Reads a top-level JSON array from a stream one element at a time, so that only the element currently being
+ * parsed needs to be held in memory. android.util.JsonReader is not available on all API levels we support,
+ * so elements are split on the raw character stream and then handed to JSONTokener individually.
+ */
+public final class JsonArrayStreamReader implements Closeable {
+    private static final String CHARSET = "UTF-8";
+
+    private final Reader reader;
+    private final char[] buffer = new char[Utility.DEFAULT_STREAM_BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private long charactersRead;
+    private boolean inArray;
+    private boolean finished;
+
+    public JsonArrayStreamReader(InputStream stream) throws IOException {
+        this.reader = new InputStreamReader(stream, CHARSET);
+    }
+
+    /**
+     * Consumes the opening bracket of the top-level array.
+     *
+     * @return true if the stream contains an array, false if it contains some other value; in the latter case
+     *         the value can be retrieved with {@link #readRemainingValue()}
+     */
+    public boolean beginArray() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '[') {
+            read();
+            inArray = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the raw JSON text of the next element of the array, or null once the closing bracket has been
+     * reached.
+     */
+    public String nextElement() throws IOException, JSONException {
+        if (!inArray) {
+            throw new IllegalStateException("beginArray must be called first");
+        }
+        if (finished) {
+            return null;
+        }
+
+        int c = peekNonWhitespace();
+        if (c == ']') {
+            read();
+            finished = true;
+            return null;
+        } else if (c == -1) {
+            throw new JSONException("Unterminated array");
+        }
+
+        StringBuilder element = new StringBuilder();
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        while (true) {
+            c = read();
+            if (c == -1) {
+                throw new JSONException("Unterminated array");
+            }
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    // Closing bracket of the top-level array.
+                    finished = true;
+                    break;
+                }
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                break;
+            }
+            element.append((char) c);
+        }
+
+        return element.toString();
+    }
+
+    /**
+     * Reads and discards everything left in the stream after the array, such as trailing whitespace. The stream
+     * must be read to its end for an HTTP connection to be reused, and for any copy being made of the stream as it
+     * is read, such as the one written to the response cache, to be complete.
+     *
+     * @return the number of characters skipped
+     */
+    public long skipRemaining() throws IOException {
+        long skipped = bufferLength - bufferPosition;
+        bufferPosition = bufferLength;
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            skipped += n;
+            charactersRead += n;
+        }
+        return skipped;
+    }
+
+    /**
+     * Reads whatever remains in the stream as a single string. Used when the stream did not contain an array.
+     */
+    public String readRemainingValue() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        if (bufferPosition < bufferLength) {
+            stringBuilder.append(buffer, bufferPosition, bufferLength - bufferPosition);
+            bufferPosition = bufferLength;
+        }
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            stringBuilder.append(buffer, 0, n);
+            charactersRead += n;
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Returns the number of characters read from the underlying stream so far.
+     */
+    public long getCharactersRead() {
+        return charactersRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (true) {
+            if (!fill()) {
+                return -1;
+            }
+            char c = buffer[bufferPosition];
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+            bufferPosition++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[bufferPosition++];
+    }
+
+    private boolean fill() throws IOException {
+        if (bufferPosition < bufferLength) {
+            return true;
+        }
+        bufferLength = reader.read(buffer);
+        bufferPosition = 0;
+        if (bufferLength <= 0) {
+            bufferLength = 0;
+            return false;
+        }
+        charactersRead += bufferLength;
+        return true;
+    }
+}
@@ -20,89 +20,315 @@ import android.content.Context;
 import android.util.Log;
 import com.facebook.LoggingBehavior;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+// Redirects are kept in memory, with each chain collapsed to its final target, and backed by a journal file that
+// every new redirect is appended to.  The journal is read once, on first use, and is rewritten from memory when it
+// has grown well past the number of live redirects.  Redirects whose URLs are too long for the journal's record
+// format are only kept in memory.
 class UrlRedirectCache {
     static final String TAG = UrlRedirectCache.class.getSimpleName();
-    private static final String REDIRECT_CONTENT_TAG = TAG + "_Redirect";
+    private static final String JOURNAL_FILE_NAME = "journal";
+    private static final String COMPACT_FILE_NAME = "journal.tmp";
+    private static final int MAX_REDIRECT_COUNT = 1024;
+    // The most bytes DataOutputStream.writeUTF can write for one string.
+    private static final int MAX_JOURNAL_STRING_LENGTH = 65535;
 
-    private volatile static FileLruCache urlRedirectCache;
+    // All guarded by the class lock.  Ordered from least to most recently used.
+    private static final LinkedHashMap<String, Redirect> redirects =
+            new LinkedHashMap<String, Redirect>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Redirect> eldest) {
+            if (size() > MAX_REDIRECT_COUNT) {
+                removeFromTargetIndex(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    // Maps each target to the redirects that point at it, so a new redirect can re-point them without a scan.
+    private static final HashMap<String, HashSet<Redirect>> redirectsByTarget =
+            new HashMap<String, HashSet<Redirect>>();
+    private static boolean isLoaded;
+    private static File directory;
+    private static DataOutputStream journal;
+    private static int journalRecordCount;
 
-    synchronized static FileLruCache getCache(Context context) throws IOException{
-        if (urlRedirectCache == null) {
-            urlRedirectCache = new FileLruCache(context.getApplicationContext(), TAG, new FileLruCache.Limits());
+    static URI getRedirectedUri(Context context, URI uri) {
+        if (uri == null) {
+            return null;
         }
-        return urlRedirectCache;
+
+        String target = null;
+        synchronized (UrlRedirectCache.class) {
+            loadIfNeeded(context);
+            Redirect redirect = redirects.get(uri.toString());
+            if (redirect != null) {
+                target = redirect.to;
+            }
+        }
+        return toUri(target);
     }
 
-    static URI getRedirectedUri(Context context, URI uri) {
+    // Like getRedirectedUri, but never reads the journal: until something else has loaded the cache, nothing is
+    // found.  Safe to call from the UI thread.
+    static URI getLoadedRedirectedUri(URI uri) {
         if (uri == null) {
             return null;
         }
 
-        String uriString = uri.toString();
-        InputStreamReader reader = null;
-        try {
-            InputStream stream;
-            FileLruCache cache = getCache(context);
-            boolean redirectExists = false;
-            while ((stream = cache.get(uriString, REDIRECT_CONTENT_TAG)) != null) {
-                redirectExists = true;
-
-                // Get the redirected url
-                reader = new InputStreamReader(stream);
-                char[] buffer = new char[128];
-                int bufferLength;
-                StringBuilder urlBuilder = new StringBuilder();
-                while ((bufferLength = reader.read(buffer, 0, buffer.length)) > 0) {
-                    urlBuilder.append(buffer, 0, bufferLength);
-                }
-                Utility.closeQuietly(reader);
+        String target = null;
+        synchronized (UrlRedirectCache.class) {
+            Redirect redirect = isLoaded ? redirects.get(uri.toString()) : null;
+            if (redirect != null) {
+                target = redirect.to;
+            }
+        }
+        return toUri(target);
+    }
+
+    static void cacheUriRedirect(Context context, URI fromUri, URI toUri) {
+        if (fromUri == null || toUri == null) {
+            return;
+        }
 
-                // Iterate to the next url in the redirection
-                uriString = urlBuilder.toString();
+        String from = fromUri.toString();
+        String to = toUri.toString();
+        synchronized (UrlRedirectCache.class) {
+            loadIfNeeded(context);
+
+            // Collapse the chain: point at wherever the target itself redirects to, and re-point anything that
+            // redirected to the source.
+            Redirect targetRedirect = redirects.get(to);
+            if (targetRedirect != null) {
+                to = targetRedirect.to;
+            }
+            if (from.equals(to)) {
+                return;
             }
+            HashSet<Redirect> sources = redirectsByTarget.remove(from);
+            if (sources != null) {
+                for (Redirect source : sources) {
+                    source.to = to;
+                    addToTargetIndex(source);
+                    append(source.from, to);
+                }
+            }
+            putRedirect(from, to);
+            append(from, to);
 
-            if (redirectExists) {
-                return new URI(uriString);
+            if (journalRecordCount > 2 * Math.max(redirects.size(), MAX_REDIRECT_COUNT / 2)) {
+                compact();
             }
-        } catch (URISyntaxException e) {
-            // caching is best effort, so ignore the exception
-        } catch (IOException ioe) {
-        } finally {
-            Utility.closeQuietly(reader);
         }
+    }
+
+    static void clearCache(Context context) {
+        synchronized (UrlRedirectCache.class) {
+            loadIfNeeded(context);
+            redirects.clear();
+            redirectsByTarget.clear();
+            compact();
+        }
+    }
 
+    private static URI toUri(String target) {
+        if (target != null) {
+            try {
+                return new URI(target);
+            } catch (URISyntaxException e) {
+                // caching is best effort, so ignore the exception
+            }
+        }
         return null;
     }
 
-    static void cacheUriRedirect(Context context, URI fromUri, URI toUri) {
-        if (fromUri == null || toUri == null) {
+    // Must be called with the class lock held.
+    private static void loadIfNeeded(Context context) {
+        if (isLoaded) {
             return;
         }
+        isLoaded = true;
+        directory = getDirectory(context);
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Could not create " + directory);
+            return;
+        }
+        deleteLegacyFiles();
 
-        OutputStream redirectStream = null;
+        File journalFile = new File(directory, JOURNAL_FILE_NAME);
+        DataInputStream input = null;
         try {
-            FileLruCache cache = getCache(context);
-            redirectStream = cache.openPutStream(fromUri.toString(), REDIRECT_CONTENT_TAG);
-            redirectStream.write(toUri.toString().getBytes());
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile),
+                    Utility.DEFAULT_STREAM_BUFFER_SIZE));
+            while (true) {
+                String from = input.readUTF();
+                String to = input.readUTF();
+                putRedirect(from, to);
+                journalRecordCount++;
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing cached yet
+        } catch (EOFException e) {
+            // End of the journal, or a record cut short by a crash; either way everything before it is intact.
         } catch (IOException e) {
-            // Caching is best effort
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error reading redirect journal: " + e);
         } finally {
-            Utility.closeQuietly(redirectStream);
+            Utility.closeQuietly(input);
         }
+        Logger.log(LoggingBehavior.CACHE, TAG, "loaded " + Integer.valueOf(redirects.size()) + " redirects");
+
+        // Start from a clean journal so a partial record at the end can't corrupt the ones appended after it.
+        compact();
     }
 
-    static void clearCache(Context context) {
+    // Must be called with the class lock held.
+    private static void putRedirect(String from, String to) {
+        Redirect redirect = redirects.get(from);
+        if (redirect != null) {
+            removeFromTargetIndex(redirect);
+        } else {
+            redirect = new Redirect(from);
+            redirects.put(from, redirect);
+        }
+        redirect.to = to;
+        addToTargetIndex(redirect);
+    }
+
+    // Must be called with the class lock held.
+    private static void addToTargetIndex(Redirect redirect) {
+        HashSet<Redirect> sources = redirectsByTarget.get(redirect.to);
+        if (sources == null) {
+            sources = new HashSet<Redirect>();
+            redirectsByTarget.put(redirect.to, sources);
+        }
+        sources.add(redirect);
+    }
+
+    // Must be called with the class lock held.
+    private static void removeFromTargetIndex(Redirect redirect) {
+        HashSet<Redirect> sources = redirectsByTarget.get(redirect.to);
+        if (sources != null) {
+            sources.remove(redirect);
+            if (sources.isEmpty()) {
+                redirectsByTarget.remove(redirect.to);
+            }
+        }
+    }
+
+    // Must be called with the class lock held.
+    private static void append(String from, String to) {
+        if (journal == null) {
+            return;
+        }
+        if (!canWriteToJournal(from) || !canWriteToJournal(to)) {
+            Logger.log(LoggingBehavior.CACHE, TAG, "URL too long for the redirect journal; keeping it in memory only");
+            return;
+        }
         try {
-            getCache(context).clearCache();
+            journal.writeUTF(from);
+            journal.writeUTF(to);
+            journal.flush();
+            journalRecordCount++;
+        } catch (IOException e) {
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error appending to redirect journal: " + e);
+            closeJournal();
+        }
+    }
+
+    // Rewrites the journal with just the live redirects.  Must be called with the class lock held.
+    private static void compact() {
+        closeJournal();
+
+        File compactFile = new File(directory, COMPACT_FILE_NAME);
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactFile),
+                    Utility.DEFAULT_STREAM_BUFFER_SIZE));
+            int recordCount = 0;
+            for (Redirect redirect : redirects.values()) {
+                if (canWriteToJournal(redirect.from) && canWriteToJournal(redirect.to)) {
+                    output.writeUTF(redirect.from);
+                    output.writeUTF(redirect.to);
+                    recordCount++;
+                }
+            }
+            output.close();
+            output = null;
+
+            File journalFile = new File(directory, JOURNAL_FILE_NAME);
+            if (!compactFile.renameTo(journalFile)) {
+                throw new IOException("Could not rename " + compactFile);
+            }
+            journalRecordCount = recordCount;
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
         } catch (IOException e) {
-            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "clearCache failed " + e.getMessage());
+            // Caching is best effort; redirects are still kept in memory for this run.
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error writing redirect journal: " + e);
+        } finally {
+            Utility.closeQuietly(output);
+        }
+    }
+
+    // Returns whether writeUTF can write value, which it can't if value is over 65535 bytes in modified UTF-8.
+    private static boolean canWriteToJournal(String value) {
+        int length = value.length();
+        if (length <= MAX_JOURNAL_STRING_LENGTH / 3) {
+            // No char takes more than 3 bytes.
+            return true;
+        }
+        int byteCount = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                byteCount += 1;
+            } else if (c <= 0x07FF) {
+                byteCount += 2;
+            } else {
+                byteCount += 3;
+            }
+            if (byteCount > MAX_JOURNAL_STRING_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void closeJournal() {
+        Utility.closeQuietly(journal);
+        journal = null;
+    }
+
+    // Redirects used to be stored one per file in a FileLruCache in this directory.
+    private static void deleteLegacyFiles() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.equals(JOURNAL_FILE_NAME) && !name.equals(COMPACT_FILE_NAME)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private static File getDirectory(Context context) {
+        return new File(context.getApplicationContext().getCacheDir(), TAG);
+    }
+
+    // Mutable so that re-pointing a redirect at a new target doesn't count as a use of it.
+    private static final class Redirect {
+        final String from;
+        String to;
+
+        Redirect(String from) {
+            this.from = from;
         }
     }
 }
@@ -252,6 +252,16 @@ public final class Utility {
 
     }
 
+    public static byte[] readStreamToBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[DEFAULT_STREAM_BUFFER_SIZE];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
     public static String readStreamToString(InputStream inputStream) throws IOException {
         BufferedInputStream bufferedInputStream = null;
         InputStreamReader reader = null;
@@ -19,19 +19,42 @@ package com.facebook.internal;
 import com.facebook.Settings;
 
 import java.util.concurrent.Executor;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Pending work is kept in one lane per priority, and the highest non-empty lane is served first.  To keep lower
+// lanes from starving while higher ones stay busy, a lane that has been passed over MAX_SKIPS times in a row while
+// it had work is served next regardless.
+//
+// There is no queue-wide lock.  Each lane has its own lock, held only while linking or unlinking a node; moving an
+// item between lanes takes both lanes' locks, lowest priority value first.  The running count and each item's
+// state are atomics, so isRunning() never blocks and starting work only ever holds one lane's lock.  A node's
+// priority only changes while its lane's lock is held, so a lane's list only ever holds its own nodes, all pending.
+// The pending count also only changes under the lock of the lane being added to or removed from, so validate(),
+// which takes every lane's lock in order, sees it match the lanes exactly.
 class WorkQueue {
     public static final int DEFAULT_MAX_CONCURRENT = 8;
 
-    private final Object workLock = new Object();
-    private WorkNode pendingJobs;
+    static final int PRIORITY_VISIBLE = 0;
+    static final int PRIORITY_PREFETCH = 1;
+    static final int PRIORITY_BACKGROUND = 2;
+    private static final int PRIORITY_COUNT = 3;
+    private static final int MAX_SKIPS = 4;
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_CANCELLED = 2;
+
+    private final Lane[] lanes = new Lane[PRIORITY_COUNT];
+    // Only used for aging, so updates from concurrent starts may interleave; that only shifts when a starved lane
+    // gets its turn by a job or two.
+    private final AtomicIntegerArray skipCounts = new AtomicIntegerArray(PRIORITY_COUNT);
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger runningCount = new AtomicInteger();
 
     private final int maxConcurrent;
     private final Executor executor;
 
-    private WorkNode runningJobs = null;
-    private int runningCount = 0;
-
     WorkQueue() {
         this(DEFAULT_MAX_CONCURRENT);
     }
@@ -43,6 +66,9 @@ class WorkQueue {
     WorkQueue(int maxConcurrent, Executor executor) {
         this.maxConcurrent = maxConcurrent;
         this.executor = executor;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            lanes[i] = new Lane();
+        }
     }
 
     WorkItem addActiveWorkItem(Runnable callback) {
@@ -50,9 +76,16 @@ class WorkQueue {
     }
 
     WorkItem addActiveWorkItem(Runnable callback, boolean addToFront) {
-        WorkNode node = new WorkNode(callback);
-        synchronized (workLock) {
-            pendingJobs = node.addToList(pendingJobs, addToFront);
+        return addActiveWorkItem(callback, PRIORITY_VISIBLE, addToFront);
+    }
+
+    WorkItem addActiveWorkItem(Runnable callback, int priority, boolean addToFront) {
+        validatePriority(priority);
+        WorkNode node = new WorkNode(callback, priority);
+        Lane lane = lanes[priority];
+        synchronized (lane) {
+            lane.head = node.addToList(lane.head, addToFront);
+            pendingCount.incrementAndGet();
         }
 
         startItem();
@@ -60,20 +93,29 @@ class WorkQueue {
     }
 
     void validate() {
-        synchronized (workLock) {
-            // Verify that all running items know they are running, and counts match
-            int count = 0;
+        validateLanes(0, 0);
+    }
+
+    // Verify that all pending items know they are pending and are in the right lane, and counts match.  Holds the
+    // locks of all lanes before priority while it checks the rest, so the counts come from one consistent snapshot.
+    private void validateLanes(int priority, int count) {
+        if (priority == PRIORITY_COUNT) {
+            assert runningCount.get() >= 0 && runningCount.get() <= maxConcurrent;
+            assert pendingCount.get() == count;
+            return;
+        }
 
-            if (runningJobs != null) {
-                WorkNode walk = runningJobs;
+        Lane lane = lanes[priority];
+        synchronized (lane) {
+            if (lane.head != null) {
+                WorkNode walk = lane.head;
                 do {
-                    walk.verify(true);
+                    walk.verify(priority);
                     count++;
                     walk = walk.getNext();
-                } while (walk != runningJobs);
+                } while (walk != lane.head);
             }
-
-            assert runningCount == count;
+            validateLanes(priority + 1, count);
         }
     }
 
@@ -82,31 +124,87 @@ class WorkQueue {
     }
 
     private void finishItemAndStartNew(WorkNode finished) {
-        WorkNode ready = null;
+        if (finished != null) {
+            runningCount.decrementAndGet();
+        }
 
-        synchronized (workLock) {
-            if (finished != null) {
-                runningJobs = finished.removeFromList(runningJobs);
-                runningCount--;
+        while (true) {
+            // Reserve a slot before taking a job, so that concurrent starts can never exceed maxConcurrent.
+            int running = runningCount.get();
+            if (running >= maxConcurrent) {
+                return;
+            }
+            if (!runningCount.compareAndSet(running, running + 1)) {
+                continue;
             }
 
-            if (runningCount < maxConcurrent) {
-                ready = pendingJobs; // Head of the pendingJobs queue
+            WorkNode ready = takeNext();
+            if (ready != null) {
+                execute(ready);
+                return;
+            }
+
+            runningCount.decrementAndGet();
+            // Work added while we held the slot may have seen the queue as full and left it to us to start.
+            if (pendingCount.get() == 0) {
+                return;
+            }
+        }
+    }
+
+    // Removes and returns the next node to run, marked as running, or null if there is no pending work.
+    private WorkNode takeNext() {
+        while (pendingCount.get() > 0) {
+            int selected = selectLane();
+            if (selected == -1) {
+                return null;
+            }
+
+            Lane lane = lanes[selected];
+            synchronized (lane) {
+                WorkNode ready = lane.head; // Head of the selected lane
                 if (ready != null) {
-                    // The Queue reassignments are necessary since 'ready' might have been
-                    // added / removed from the front of either queue, which changes its
-                    // respective head.
-                    pendingJobs = ready.removeFromList(pendingJobs);
-                    runningJobs = ready.addToList(runningJobs, false);
-                    runningCount++;
-
-                    ready.setIsRunning(true);
+                    // The Queue reassignment is necessary since 'ready' is at the front of the lane, which
+                    // changes its head.
+                    lane.head = ready.removeFromList(lane.head);
+                    ready.state.set(STATE_RUNNING);
+                    pendingCount.decrementAndGet();
+                    return ready;
                 }
             }
+            // The lane was emptied by a cancel, a move or another start since we looked; look again.
+        }
+        return null;
+    }
+
+    // Returns the lane to start the next job from, or -1 if there is no pending work.
+    private int selectLane() {
+        int selected = -1;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (lanes[i].head == null) {
+                continue;
+            }
+            if (selected == -1) {
+                selected = i;
+            } else if (skipCounts.get(i) >= MAX_SKIPS) {
+                selected = i;
+                break;
+            }
         }
 
-        if (ready != null) {
-            execute(ready);
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (i == selected || lanes[i].head == null) {
+                skipCounts.set(i, 0);
+            } else {
+                skipCounts.incrementAndGet(i);
+            }
+        }
+        return selected;
+    }
+
+    private static void validatePriority(int priority) {
+        if (priority < 0 || priority >= PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Invalid priority " + priority);
         }
     }
 
@@ -123,41 +221,90 @@ class WorkQueue {
         });
     }
 
+    // The pending nodes of one priority, as a circular list.  The lane itself is the lock for its list.
+    private static final class Lane {
+        volatile WorkNode head;
+    }
+
     private class WorkNode implements WorkItem {
         private final Runnable callback;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
         private WorkNode next;
         private WorkNode prev;
-        private boolean isRunning;
+        private volatile int priority;
 
-        WorkNode(Runnable callback) {
+        WorkNode(Runnable callback, int priority) {
             this.callback = callback;
+            this.priority = priority;
         }
 
         @Override
         public boolean cancel() {
-            synchronized (workLock) {
-                if (!isRunning()) {
-                    pendingJobs = removeFromList(pendingJobs);
-                    return true;
+            while (true) {
+                int current = priority;
+                Lane lane = lanes[current];
+                synchronized (lane) {
+                    if (priority != current) {
+                        continue; // Moved to another lane while we were waiting for the lock
+                    }
+                    if (state.get() != STATE_PENDING) {
+                        return state.get() == STATE_CANCELLED;
+                    }
+                    lane.head = removeFromList(lane.head);
+                    state.set(STATE_CANCELLED);
+                    pendingCount.decrementAndGet();
                 }
+                return true;
             }
-
-            return false;
         }
 
         @Override
         public void moveToFront() {
-            synchronized (workLock) {
-                if (!isRunning()) {
-                    pendingJobs = removeFromList(pendingJobs);
-                    pendingJobs = addToList(pendingJobs, true);
-                }
-            }
+            moveTo(PRIORITY_VISIBLE, true);
+        }
+
+        @Override
+        public void setPriority(int newPriority) {
+            validatePriority(newPriority);
+            moveTo(newPriority, false);
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
         }
 
         @Override
         public boolean isRunning() {
-            return isRunning;
+            return state.get() == STATE_RUNNING;
+        }
+
+        private void moveTo(int newPriority, boolean addToFront) {
+            while (true) {
+                int current = priority;
+                if (current == newPriority && !addToFront) {
+                    return;
+                }
+
+                // Always lock the lower-numbered lane first so that two moves in opposite directions can't
+                // deadlock.
+                Lane first = lanes[Math.min(current, newPriority)];
+                Lane second = lanes[Math.max(current, newPriority)];
+                synchronized (first) {
+                    synchronized (second) {
+                        if (priority != current) {
+                            continue; // Moved to another lane while we were waiting for the locks
+                        }
+                        if (state.get() != STATE_PENDING) {
+                            return;
+                        }
+                        lanes[current].head = removeFromList(lanes[current].head);
+                        priority = newPriority;
+                        lanes[newPriority].head = addToList(lanes[newPriority].head, addToFront);
+                        return;
+                    }
+                }
+            }
         }
 
         Runnable getCallback() {
@@ -168,10 +315,6 @@ class WorkQueue {
             return next;
         }
 
-        void setIsRunning(boolean isRunning) {
-            this.isRunning = isRunning;
-        }
-
         WorkNode addToList(WorkNode list, boolean addToFront) {
             assert next == null;
             assert prev == null;
@@ -206,16 +349,21 @@ class WorkQueue {
             return list;
         }
 
-        void verify(boolean shouldBeRunning) {
+        void verify(int expectedPriority) {
             assert prev.next == this;
             assert next.prev == this;
-            assert isRunning() == shouldBeRunning;
+            assert priority == expectedPriority;
+            assert state.get() == STATE_PENDING;
         }
     }
 
     interface WorkItem {
         boolean cancel();
         boolean isRunning();
+        // Moves the item to the front of the highest priority lane.
         void moveToFront();
+        // Moves the item to the back of the given lane; does nothing if it is already in that lane or running.
+        void setPriority(int priority);
+        int getPriority();
     }
 }
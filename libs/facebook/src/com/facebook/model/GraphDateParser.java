@@ -0,0 +1,222 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+// Parses the ISO-8601 timestamps that the Graph API returns: "2014-03-01T19:00:00+0000", optionally with fractional
+// seconds and with the offset written as "Z", "+00", "+0000" or "+00:00".  A date-time without an offset, or a bare
+// date, is in the default time zone, as it was when these were parsed with SimpleDateFormat.  Anything else, such as
+// out-of-range fields that SimpleDateFormat would leniently roll over, still goes through those formats.
+//
+// The common case is parsed by hand with no allocation beyond the result, and the most recent timestamps with an
+// offset are cached, since the same created_time or updated_time is often read many times.  Thread-safe.
+final class GraphDateParser {
+    private static final int MAX_CACHED_TIMES = 64;
+    private static final String[] FALLBACK_FORMATS = new String[] {
+            "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd" };
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    // Earlier dates are in the Julian calendar as far as SimpleDateFormat is concerned; leave those to it.
+    private static final int FIRST_GREGORIAN_YEAR = 1583;
+
+    // Guarded by itself.  Maps a timestamp to its time in milliseconds; only timestamps with an offset are cached,
+    // since the others depend on the default time zone.
+    private static final LinkedHashMap<String, Long> recentTimes = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_CACHED_TIMES;
+        }
+    };
+
+    private GraphDateParser() {
+    }
+
+    // Returns the Date for value, or null if it isn't a recognized date format.
+    static Date parse(String value) {
+        Long time;
+        synchronized (recentTimes) {
+            time = recentTimes.get(value);
+        }
+        if (time != null) {
+            return new Date(time);
+        }
+
+        Date date = parseIso8601(value);
+        if (date == null) {
+            date = parseWithFallbackFormats(value);
+        }
+        return date;
+    }
+
+    private static Date parseIso8601(String value) {
+        int length = value.length();
+        if (length < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return null;
+        }
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 2);
+        int day = parseDigits(value, 8, 2);
+        if (year < FIRST_GREGORIAN_YEAR || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month)) {
+            return null;
+        }
+        if (length == 10) {
+            return getLocalDate(year, month, day, 0, 0, 0, 0);
+        }
+
+        if (length < 19 || value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return null;
+        }
+        int hour = parseDigits(value, 11, 2);
+        int minute = parseDigits(value, 14, 2);
+        int second = parseDigits(value, 17, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+
+        int index = 19;
+        int millisecond = 0;
+        if (index < length && value.charAt(index) == '.') {
+            index++;
+            int start = index;
+            while (index < length && isDigit(value.charAt(index))) {
+                // Only the first three digits are significant.
+                if (index - start < 3) {
+                    millisecond = millisecond * 10 + (value.charAt(index) - '0');
+                }
+                index++;
+            }
+            if (index == start) {
+                return null;
+            }
+            for (int digits = index - start; digits < 3; digits++) {
+                millisecond *= 10;
+            }
+        }
+        if (index == length) {
+            return getLocalDate(year, month, day, hour, minute, second, millisecond);
+        }
+
+        int offsetMinutes = parseOffsetMinutes(value, index);
+        if (offsetMinutes == Integer.MIN_VALUE) {
+            return null;
+        }
+
+        long time = getDaysSinceEpoch(year, month, day) * MILLIS_PER_DAY +
+                ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000 + millisecond;
+        synchronized (recentTimes) {
+            recentTimes.put(value, time);
+        }
+        return new Date(time);
+    }
+
+    // Parses an offset from UTC that runs from index to the end of value, or returns Integer.MIN_VALUE.
+    private static int parseOffsetMinutes(String value, int index) {
+        int length = value.length();
+        char sign = value.charAt(index);
+        if (sign == 'Z') {
+            return (index + 1 == length) ? 0 : Integer.MIN_VALUE;
+        } else if (sign != '+' && sign != '-') {
+            return Integer.MIN_VALUE;
+        }
+
+        int hours = (index + 3 <= length) ? parseDigits(value, index + 1, 2) : -1;
+        int minutes = 0;
+        index += 3;
+        if (index < length && value.charAt(index) == ':') {
+            index++;
+        }
+        if (index < length) {
+            minutes = (index + 2 == length) ? parseDigits(value, index, 2) : -1;
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return Integer.MIN_VALUE;
+        }
+
+        int offset = hours * 60 + minutes;
+        return (sign == '-') ? -offset : offset;
+    }
+
+    private static Date parseWithFallbackFormats(String value) {
+        // SimpleDateFormat isn't thread-safe, so these can't be shared; they are only used for unusual timestamps.
+        for (String pattern : FALLBACK_FORMATS) {
+            try {
+                Date date = new SimpleDateFormat(pattern, Locale.US).parse(value);
+                if (date != null) {
+                    return date;
+                }
+            } catch (ParseException e) {
+                // Keep going.
+            }
+        }
+        return null;
+    }
+
+    private static Date getLocalDate(int year, int month, int day, int hour, int minute, int second,
+            int millisecond) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millisecond);
+        return calendar.getTime();
+    }
+
+    // Returns the value of count decimal digits starting at start, or -1 if they aren't all digits.
+    private static int parseDigits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int getDaysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean isLeapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return isLeapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Days from 1970-01-01 to the given date in the Gregorian calendar.
+    private static long getDaysSinceEpoch(int year, int month, int day) {
+        // Count from March 1st, so that the leap day falls at the end of the year.
+        int marchBasedYear = (month <= 2) ? year - 1 : year;
+        int marchBasedMonth = (month <= 2) ? month + 9 : month - 3;
+        int era = marchBasedYear / 400;
+        int yearOfEra = marchBasedYear - era * 400;
+        int dayOfYear = (153 * marchBasedMonth + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
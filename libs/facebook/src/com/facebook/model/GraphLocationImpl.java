@@ -0,0 +1,103 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONObject;
+
+// The GraphObjectImpl for GraphLocation; see GraphObjectImpl.
+final class GraphLocationImpl extends GraphObjectImpl implements GraphLocation {
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new GraphLocationImpl(state);
+        }
+    };
+
+    GraphLocationImpl(JSONObject state) {
+        super(state, GraphLocation.class);
+    }
+
+    @Override
+    public String getStreet() {
+        return getProperty("street", String.class);
+    }
+
+    @Override
+    public void setStreet(String street) {
+        setProperty("street", street);
+    }
+
+    @Override
+    public String getCity() {
+        return getProperty("city", String.class);
+    }
+
+    @Override
+    public void setCity(String city) {
+        setProperty("city", city);
+    }
+
+    @Override
+    public String getState() {
+        return getProperty("state", String.class);
+    }
+
+    @Override
+    public void setState(String state) {
+        setProperty("state", state);
+    }
+
+    @Override
+    public String getCountry() {
+        return getProperty("country", String.class);
+    }
+
+    @Override
+    public void setCountry(String country) {
+        setProperty("country", country);
+    }
+
+    @Override
+    public String getZip() {
+        return getProperty("zip", String.class);
+    }
+
+    @Override
+    public void setZip(String zip) {
+        setProperty("zip", zip);
+    }
+
+    @Override
+    public double getLatitude() {
+        return getDoubleProperty("latitude", 0);
+    }
+
+    @Override
+    public void setLatitude(double latitude) {
+        setProperty("latitude", latitude);
+    }
+
+    @Override
+    public double getLongitude() {
+        return getDoubleProperty("longitude", 0);
+    }
+
+    @Override
+    public void setLongitude(double longitude) {
+        setProperty("longitude", longitude);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONObject;
+
+import java.lang.reflect.ParameterizedType;
+
+// The GraphObjectImpl for GraphMultiResult; see GraphObjectImpl.
+final class GraphMultiResultImpl extends GraphObjectImpl implements GraphMultiResult {
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new GraphMultiResultImpl(state);
+        }
+    };
+
+    private static final ParameterizedType GRAPH_OBJECT_LIST_TYPE =
+            GraphObject.Factory.createListType(GraphObject.class);
+
+    GraphMultiResultImpl(JSONObject state) {
+        super(state, GraphMultiResult.class);
+    }
+
+    @Override
+    public GraphObjectList<GraphObject> getData() {
+        @SuppressWarnings("unchecked")
+        GraphObjectList<GraphObject> result = getProperty("data", GraphObjectList.class, GRAPH_OBJECT_LIST_TYPE);
+        return result;
+    }
+}
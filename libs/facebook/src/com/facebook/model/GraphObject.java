@@ -24,16 +24,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.lang.reflect.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * GraphObject is the primary interface used by the Facebook SDK for Android to represent objects in the Facebook
  * Social Graph and the Facebook Open Graph (OG). It is the base interface for all typed access to graph objects
- * in the SDK. No concrete classes implement GraphObject or its derived interfaces. Rather, they are implemented as
- * proxies (see the {@link com.facebook.model.GraphObject.Factory Factory} class) that provide strongly-typed property
- * getters and setters to access the underlying data. Since the primary use case for graph objects is sending and
+ * in the SDK. GraphObject and its derived interfaces are not meant to be implemented by applications. Rather, they are
+ * implemented by the {@link com.facebook.model.GraphObject.Factory Factory} class, either as proxies or, for the
+ * interfaces in this package, as internal classes, that provide strongly-typed property getters and setters to
+ * access the underlying data. Since the primary use case for graph objects is sending and
  * receiving them over the wire to/from Facebook services, they are represented as JSONObjects. No validation is done
  * that a graph object is actually of a specific type -- any graph object can be treated as any GraphObject-derived
  * interface, and the presence or absence of specific properties determines its suitability for use as that
@@ -88,6 +88,30 @@ public interface GraphObject {
      */
     <T extends GraphObject> GraphObjectList<T> getPropertyAsList(String propertyName, Class<T> graphObjectClass);
 
+    /**
+     * Gets a numeric property of the GraphObject as a long, without boxing it.
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value to return if the property is not present or is not a number
+     * @return the value of the named property, or defaultValue
+     */
+    long getLongProperty(String propertyName, long defaultValue);
+
+    /**
+     * Gets a numeric property of the GraphObject as a double, without boxing it.
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value to return if the property is not present or is not a number
+     * @return the value of the named property, or defaultValue
+     */
+    double getDoubleProperty(String propertyName, double defaultValue);
+
+    /**
+     * Gets a boolean property of the GraphObject, without boxing it.
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value to return if the property is not present or is not a boolean
+     * @return the value of the named property, or defaultValue
+     */
+    boolean getBooleanProperty(String propertyName, boolean defaultValue);
+
     /**
      * Sets a property of the GraphObject
      * @param propertyName the name of the property to set
@@ -109,10 +133,25 @@ public interface GraphObject {
      * Collection, List, and GraphObjectList.
      */
     final class Factory {
-        private static final HashSet<Class<?>> verifiedGraphObjectClasses = new HashSet<Class<?>>();
-        private static final SimpleDateFormat[] dateFormats = new SimpleDateFormat[] {
-                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US),
-                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US), new SimpleDateFormat("yyyy-MM-dd", Locale.US), };
+        // The dispatch table for proxies of each verified interface.  Built once per interface and shared by every
+        // proxy for it, including the ones created by cast().
+        private static final ConcurrentHashMap<Class<?>, Map<Method, ProxyMethod>> proxyMethodsByClass =
+                new ConcurrentHashMap<Class<?>, Map<Method, ProxyMethod>>();
+        private static final Map<Method, ProxyMethod> mapProxyMethods = createMapProxyMethods();
+        // Non-proxy implementations, keyed by the exact interface they implement.  Only written during class
+        // initialization, so reads need no locking.
+        private static final Map<Class<?>, GraphObjectImpl.Creator> implementations =
+                new HashMap<Class<?>, GraphObjectImpl.Creator>();
+
+        static {
+            implementations.put(GraphObject.class, GraphObjectImpl.CREATOR);
+            implementations.put(GraphLocation.class, GraphLocationImpl.CREATOR);
+            implementations.put(GraphMultiResult.class, GraphMultiResultImpl.CREATOR);
+            implementations.put(GraphPlace.class, GraphPlaceImpl.CREATOR);
+            implementations.put(GraphUser.class, GraphUserImpl.CREATOR);
+            implementations.put(OpenGraphAction.class, OpenGraphActionImpl.CREATOR);
+            implementations.put(OpenGraphObject.class, OpenGraphObjectImpl.CREATOR);
+        }
 
         // No objects of this type should exist.
         private Factory() {
@@ -213,10 +252,20 @@ public interface GraphObject {
         }
 
         private static <T extends GraphObject> T createGraphObjectProxy(Class<T> graphObjectClass, JSONObject state) {
-            verifyCanProxyClass(graphObjectClass);
+            GraphObjectImpl.Creator creator = implementations.get(graphObjectClass);
+            if (creator != null) {
+                return graphObjectClass.cast(creator.create(state));
+            }
+            return createProxy(graphObjectClass, state);
+        }
+
+        // Always creates a java.lang.reflect.Proxy, even for interfaces that have a GraphObjectImpl, so that tests can
+        // check the two against each other.
+        static <T extends GraphObject> T createProxy(Class<T> graphObjectClass, JSONObject state) {
+            Map<Method, ProxyMethod> proxyMethods = verifyCanProxyClass(graphObjectClass);
 
             Class<?>[] interfaces = new Class<?>[] { graphObjectClass };
-            GraphObjectProxy graphObjectProxy = new GraphObjectProxy(state, graphObjectClass);
+            GraphObjectProxy graphObjectProxy = new GraphObjectProxy(state, graphObjectClass, proxyMethods);
 
             @SuppressWarnings("unchecked")
             T graphObject = (T) Proxy.newProxyInstance(GraphObject.class.getClassLoader(), interfaces, graphObjectProxy);
@@ -224,9 +273,14 @@ public interface GraphObject {
             return graphObject;
         }
 
-        private static Map<String, Object> createGraphObjectProxyForMap(JSONObject state) {
+        // The interfaces that create() implements with a GraphObjectImpl rather than a proxy.
+        static Set<Class<?>> getImplementedClasses() {
+            return Collections.unmodifiableSet(implementations.keySet());
+        }
+
+        static Map<String, Object> createGraphObjectProxyForMap(JSONObject state) {
             Class<?>[] interfaces = new Class<?>[]{Map.class};
-            GraphObjectProxy graphObjectProxy = new GraphObjectProxy(state, Map.class);
+            GraphObjectProxy graphObjectProxy = new GraphObjectProxy(state, Map.class, mapProxyMethods);
 
             @SuppressWarnings("unchecked")
             Map<String, Object> graphObject = (Map<String, Object>) Proxy
@@ -235,17 +289,12 @@ public interface GraphObject {
             return graphObject;
         }
 
-        private static synchronized <T extends GraphObject> boolean hasClassBeenVerified(Class<T> graphObjectClass) {
-            return verifiedGraphObjectClasses.contains(graphObjectClass);
-        }
-
-        private static synchronized <T extends GraphObject> void recordClassHasBeenVerified(Class<T> graphObjectClass) {
-            verifiedGraphObjectClasses.add(graphObjectClass);
-        }
-
-        private static <T extends GraphObject> void verifyCanProxyClass(Class<T> graphObjectClass) {
-            if (hasClassBeenVerified(graphObjectClass)) {
-                return;
+        // Returns the dispatch table for proxies of graphObjectClass, verifying the class the first time it is seen.
+        private static <T extends GraphObject> Map<Method, ProxyMethod> verifyCanProxyClass(
+                Class<T> graphObjectClass) {
+            Map<Method, ProxyMethod> proxyMethods = proxyMethodsByClass.get(graphObjectClass);
+            if (proxyMethods != null) {
+                return proxyMethods;
             }
 
             if (!graphObjectClass.isInterface()) {
@@ -253,6 +302,7 @@ public interface GraphObject {
                         + graphObjectClass.getName());
             }
 
+            proxyMethods = createObjectProxyMethods();
             Method[] methods = graphObjectClass.getMethods();
             for (Method method : methods) {
                 String methodName = method.getName();
@@ -262,16 +312,22 @@ public interface GraphObject {
 
                 if (method.getDeclaringClass().isAssignableFrom(GraphObject.class)) {
                     // Don't worry about any methods from GraphObject or one of its base classes.
+                    ProxyMethodKind kind = GraphObjectProxy.graphObjectMethodKinds.get(methodName);
+                    if (kind != null) {
+                        proxyMethods.put(method, new ProxyMethod(kind));
+                    }
                     continue;
                 } else if (parameterCount == 1 && returnType == Void.TYPE) {
                     if (hasPropertyNameOverride) {
                         // If a property override is present, it MUST be valid. We don't fallback
                         // to using the method name
                         if (!Utility.isNullOrEmpty(method.getAnnotation(PropertyName.class).value())) {
+                            proxyMethods.put(method, ProxyMethod.createSetter(method));
                             continue;
                         }
                     } else if (methodName.startsWith("set") && methodName.length() > 3) {
                         // Looks like a valid setter
+                        proxyMethods.put(method, ProxyMethod.createSetter(method));
                         continue;
                     }
                 } else if (parameterCount == 0 && returnType != Void.TYPE) {
@@ -279,10 +335,12 @@ public interface GraphObject {
                         // If a property override is present, it MUST be valid. We don't fallback
                         // to using the method name
                         if (!Utility.isNullOrEmpty(method.getAnnotation(PropertyName.class).value())) {
+                            proxyMethods.put(method, ProxyMethod.createGetter(method));
                             continue;
                         }
                     } else if (methodName.startsWith("get") && methodName.length() > 3) {
                         // Looks like a valid getter
+                        proxyMethods.put(method, ProxyMethod.createGetter(method));
                         continue;
                     }
                 }
@@ -290,7 +348,34 @@ public interface GraphObject {
                 throw new FacebookGraphObjectException("Factory can't proxy method: " + method.toString());
             }
 
-            recordClassHasBeenVerified(graphObjectClass);
+            // Another thread may have got here first; either table will do, but keep the one already shared.
+            Map<Method, ProxyMethod> existing = proxyMethodsByClass.putIfAbsent(graphObjectClass, proxyMethods);
+            return (existing != null) ? existing : proxyMethods;
+        }
+
+        private static Map<Method, ProxyMethod> createMapProxyMethods() {
+            Map<Method, ProxyMethod> proxyMethods = createObjectProxyMethods();
+            for (Method method : Map.class.getMethods()) {
+                ProxyMethodKind kind = GraphObjectProxy.mapMethodKinds.get(method.getName());
+                if (kind != null && method.getDeclaringClass() == Map.class) {
+                    proxyMethods.put(method, new ProxyMethod(kind));
+                }
+            }
+            return proxyMethods;
+        }
+
+        // The methods of java.lang.Object that are passed on to a proxy.
+        private static Map<Method, ProxyMethod> createObjectProxyMethods() {
+            Map<Method, ProxyMethod> proxyMethods = new HashMap<Method, ProxyMethod>();
+            try {
+                proxyMethods.put(Object.class.getMethod("equals", Object.class),
+                        new ProxyMethod(ProxyMethodKind.EQUALS));
+                proxyMethods.put(Object.class.getMethod("hashCode"), new ProxyMethod(ProxyMethodKind.HASH_CODE));
+                proxyMethods.put(Object.class.getMethod("toString"), new ProxyMethod(ProxyMethodKind.TO_STRING));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+            return proxyMethods;
         }
 
         // If expectedType is a generic type, expectedTypeAsParameterizedType must be provided in order to determine
@@ -383,17 +468,11 @@ public interface GraphObject {
                 }
             } else if (Date.class.equals(expectedType)) {
                 if (String.class.isAssignableFrom(valueType)) {
-                    for (SimpleDateFormat format : dateFormats) {
-                        try {
-                            Date date = format.parse((String) value);
-                            if (date != null) {
-                                @SuppressWarnings("unchecked")
-                                U result = (U) date;
-                                return result;
-                            }
-                        } catch (ParseException e) {
-                            // Keep going.
-                        }
+                    Date date = GraphDateParser.parse((String) value);
+                    if (date != null) {
+                        @SuppressWarnings("unchecked")
+                        U result = (U) date;
+                        return result;
                     }
                 }
             }
@@ -406,7 +485,52 @@ public interface GraphObject {
             return string.toLowerCase(Locale.US);
         }
 
-        private static Object getUnderlyingJSONObject(Object obj) {
+        // The type of a GraphObjectList<itemType> property, for coerceValueToExpectedType.
+        static ParameterizedType createListType(final Class<?> itemType) {
+            return new ParameterizedType() {
+                @Override
+                public Type[] getActualTypeArguments() {
+                    return new Type[]{ itemType };
+                }
+
+                @Override
+                public Type getOwnerType() {
+                    return null;
+                }
+
+                @Override
+                public Type getRawType() {
+                    return GraphObjectList.class;
+                }
+            };
+        }
+
+        // If propertyName is set, wraps value, or each item if it is a list, in a new GraphObject under that name.
+        static Object createGraphObjectsFromParameters(String propertyName, Object value) {
+            if (!Utility.isNullOrEmpty(propertyName)) {
+                if (List.class.isAssignableFrom(value.getClass())) {
+                    GraphObjectList<GraphObject> graphObjects = Factory.createList(GraphObject.class);
+                    @SuppressWarnings("unchecked")
+                    List<Object> values = (List<Object>)value;
+                    for (Object obj : values) {
+                        GraphObject graphObject = Factory.create();
+                        graphObject.setProperty(propertyName, obj);
+                        graphObjects.add(graphObject);
+                    }
+
+                    value = graphObjects;
+                } else {
+                    GraphObject graphObject = Factory.create();
+                    graphObject.setProperty(propertyName, value);
+
+                    value = graphObject;
+                }
+            }
+
+            return value;
+        }
+
+        static Object getUnderlyingJSONObject(Object obj) {
             if (obj == null) {
                 return null;
             }
@@ -433,11 +557,81 @@ public interface GraphObject {
             return obj;
         }
 
-        private abstract static class ProxyBase<STATE> implements InvocationHandler {
-            // Pre-loaded Method objects for the methods in java.lang.Object
-            private static final String EQUALS_METHOD = "equals";
-            private static final String TOSTRING_METHOD = "toString";
+        private static enum ProxyMethodKind {
+            EQUALS, HASH_CODE, TO_STRING,
+            CLEAR, CONTAINS_KEY, CONTAINS_VALUE, ENTRY_SET, GET, IS_EMPTY, KEY_SET, PUT, PUT_ALL, REMOVE, SIZE, VALUES,
+            CAST, CAST_TO_MAP, GET_INNER_JSON_OBJECT, GET_PROPERTY, GET_PROPERTY_AS, GET_PROPERTY_AS_LIST, SET_PROPERTY,
+            REMOVE_PROPERTY, GET_LONG_PROPERTY, GET_DOUBLE_PROPERTY, GET_BOOLEAN_PROPERTY,
+            GETTER, LONG_GETTER, DOUBLE_GETTER, BOOLEAN_GETTER, SETTER
+        }
+
+        // How a proxy handles one method, worked out when its interface is verified so that each call is a table
+        // lookup rather than a round of reflection.
+        private static final class ProxyMethod {
+            final ProxyMethodKind kind;
+            // For getters and setters, the JSON property they access.
+            final String key;
+            // For getters, the type the property is coerced to.
+            final Class<?> returnType;
+            final ParameterizedType parameterizedReturnType;
+            // For setters, the value of their @CreateGraphObject annotation, if any.
+            final String createGraphObjectPropertyName;
+
+            ProxyMethod(ProxyMethodKind kind) {
+                this(kind, null, null, null, null);
+            }
 
+            private ProxyMethod(ProxyMethodKind kind, String key, Class<?> returnType,
+                    ParameterizedType parameterizedReturnType, String createGraphObjectPropertyName) {
+                this.kind = kind;
+                this.key = key;
+                this.returnType = returnType;
+                this.parameterizedReturnType = parameterizedReturnType;
+                this.createGraphObjectPropertyName = createGraphObjectPropertyName;
+            }
+
+            static ProxyMethod createGetter(Method method) {
+                Type genericReturnType = method.getGenericReturnType();
+                ParameterizedType parameterizedReturnType = null;
+                if (genericReturnType instanceof ParameterizedType) {
+                    parameterizedReturnType = (ParameterizedType) genericReturnType;
+                }
+
+                return new ProxyMethod(getGetterKind(method.getReturnType()), getKey(method), method.getReturnType(),
+                        parameterizedReturnType, null);
+            }
+
+            // Getters of primitive types read with the same optLong, optDouble and optBoolean defaults as the
+            // GraphObjectImpl classes, so a missing or differently typed value gives the same result either way.
+            private static ProxyMethodKind getGetterKind(Class<?> returnType) {
+                if (returnType == boolean.class) {
+                    return ProxyMethodKind.BOOLEAN_GETTER;
+                } else if (returnType == double.class || returnType == float.class) {
+                    return ProxyMethodKind.DOUBLE_GETTER;
+                } else if (returnType == long.class || returnType == int.class || returnType == short.class
+                        || returnType == byte.class) {
+                    return ProxyMethodKind.LONG_GETTER;
+                }
+                return ProxyMethodKind.GETTER;
+            }
+
+            static ProxyMethod createSetter(Method method) {
+                CreateGraphObject createGraphObjectAnnotation = method.getAnnotation(CreateGraphObject.class);
+                String createGraphObjectPropertyName =
+                        (createGraphObjectAnnotation != null) ? createGraphObjectAnnotation.value() : null;
+
+                return new ProxyMethod(ProxyMethodKind.SETTER, getKey(method), null, null,
+                        createGraphObjectPropertyName);
+            }
+
+            private static String getKey(Method method) {
+                PropertyName propertyNameOverride = method.getAnnotation(PropertyName.class);
+                return propertyNameOverride != null ? propertyNameOverride.value() :
+                        convertCamelCaseToLowercaseWithUnderscores(method.getName().substring(3));
+            }
+        }
+
+        private abstract static class ProxyBase<STATE> implements InvocationHandler {
             protected final STATE state;
 
             protected ProxyBase(STATE state) {
@@ -450,29 +644,23 @@ public interface GraphObject {
                         + method.toString());
             }
 
-            protected final Object proxyObjectMethods(Object proxy, Method method, Object[] args) throws Throwable {
-                String methodName = method.getName();
-                if (methodName.equals(EQUALS_METHOD)) {
-                    Object other = args[0];
-
-                    if (other == null) {
-                        return false;
-                    }
-
-                    InvocationHandler handler = Proxy.getInvocationHandler(other);
-                    if (!(handler instanceof GraphObjectProxy)) {
-                        return false;
-                    }
-                    GraphObjectProxy otherProxy = (GraphObjectProxy) handler;
-                    return this.state.equals(otherProxy.state);
-                } else if (methodName.equals(TOSTRING_METHOD)) {
-                    return toString();
+            protected final boolean proxyEquals(Object other) {
+                if (other == null) {
+                    return false;
+                }
+                if (!Proxy.isProxyClass(other.getClass())) {
+                    // Graph objects that aren't proxies are equal if they wrap the same JSONObject too.
+                    return (other instanceof GraphObject) &&
+                            this.state.equals(((GraphObject) other).getInnerJSONObject());
                 }
 
-                // For others, just defer to the implementation object.
-                return method.invoke(this.state, args);
+                InvocationHandler handler = Proxy.getInvocationHandler(other);
+                if (!(handler instanceof GraphObjectProxy)) {
+                    return false;
+                }
+                GraphObjectProxy otherProxy = (GraphObjectProxy) handler;
+                return this.state.equals(otherProxy.state);
             }
-
         }
 
         private final static class GraphObjectProxy extends ProxyBase<JSONObject> {
@@ -496,12 +684,49 @@ public interface GraphObject {
             private static final String SETPROPERTY_METHOD = "setProperty";
             private static final String REMOVEPROPERTY_METHOD = "removeProperty";
             private static final String GETINNERJSONOBJECT_METHOD = "getInnerJSONObject";
+            private static final String GETLONGPROPERTY_METHOD = "getLongProperty";
+            private static final String GETDOUBLEPROPERTY_METHOD = "getDoubleProperty";
+            private static final String GETBOOLEANPROPERTY_METHOD = "getBooleanProperty";
+
+            // Only written during class initialization.
+            static final Map<String, ProxyMethodKind> mapMethodKinds = new HashMap<String, ProxyMethodKind>();
+            static final Map<String, ProxyMethodKind> graphObjectMethodKinds = new HashMap<String, ProxyMethodKind>();
+
+            static {
+                mapMethodKinds.put(CLEAR_METHOD, ProxyMethodKind.CLEAR);
+                mapMethodKinds.put(CONTAINSKEY_METHOD, ProxyMethodKind.CONTAINS_KEY);
+                mapMethodKinds.put(CONTAINSVALUE_METHOD, ProxyMethodKind.CONTAINS_VALUE);
+                mapMethodKinds.put(ENTRYSET_METHOD, ProxyMethodKind.ENTRY_SET);
+                mapMethodKinds.put(GET_METHOD, ProxyMethodKind.GET);
+                mapMethodKinds.put(ISEMPTY_METHOD, ProxyMethodKind.IS_EMPTY);
+                mapMethodKinds.put(KEYSET_METHOD, ProxyMethodKind.KEY_SET);
+                mapMethodKinds.put(PUT_METHOD, ProxyMethodKind.PUT);
+                mapMethodKinds.put(PUTALL_METHOD, ProxyMethodKind.PUT_ALL);
+                mapMethodKinds.put(REMOVE_METHOD, ProxyMethodKind.REMOVE);
+                mapMethodKinds.put(SIZE_METHOD, ProxyMethodKind.SIZE);
+                mapMethodKinds.put(VALUES_METHOD, ProxyMethodKind.VALUES);
+
+                graphObjectMethodKinds.put(CAST_METHOD, ProxyMethodKind.CAST);
+                graphObjectMethodKinds.put(CASTTOMAP_METHOD, ProxyMethodKind.CAST_TO_MAP);
+                graphObjectMethodKinds.put(GETPROPERTY_METHOD, ProxyMethodKind.GET_PROPERTY);
+                graphObjectMethodKinds.put(GETPROPERTYAS_METHOD, ProxyMethodKind.GET_PROPERTY_AS);
+                graphObjectMethodKinds.put(GETPROPERTYASLIST_METHOD, ProxyMethodKind.GET_PROPERTY_AS_LIST);
+                graphObjectMethodKinds.put(SETPROPERTY_METHOD, ProxyMethodKind.SET_PROPERTY);
+                graphObjectMethodKinds.put(REMOVEPROPERTY_METHOD, ProxyMethodKind.REMOVE_PROPERTY);
+                graphObjectMethodKinds.put(GETINNERJSONOBJECT_METHOD, ProxyMethodKind.GET_INNER_JSON_OBJECT);
+                graphObjectMethodKinds.put(GETLONGPROPERTY_METHOD, ProxyMethodKind.GET_LONG_PROPERTY);
+                graphObjectMethodKinds.put(GETDOUBLEPROPERTY_METHOD, ProxyMethodKind.GET_DOUBLE_PROPERTY);
+                graphObjectMethodKinds.put(GETBOOLEANPROPERTY_METHOD, ProxyMethodKind.GET_BOOLEAN_PROPERTY);
+            }
 
             private final Class<?> graphObjectClass;
+            private final Map<Method, ProxyMethod> proxyMethods;
 
-            public GraphObjectProxy(JSONObject state, Class<?> graphObjectClass) {
+            public GraphObjectProxy(JSONObject state, Class<?> graphObjectClass,
+                    Map<Method, ProxyMethod> proxyMethods) {
                 super(state);
                 this.graphObjectClass = graphObjectClass;
+                this.proxyMethods = proxyMethods;
             }
 
             @Override
@@ -511,183 +736,131 @@ public interface GraphObject {
 
             @Override
             public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                Class<?> declaringClass = method.getDeclaringClass();
-
-                if (declaringClass == Object.class) {
-                    return proxyObjectMethods(proxy, method, args);
-                } else if (declaringClass == Map.class) {
-                    return proxyMapMethods(method, args);
-                } else if (declaringClass == GraphObject.class) {
-                    return proxyGraphObjectMethods(proxy, method, args);
-                } else if (GraphObject.class.isAssignableFrom(declaringClass)) {
-                    return proxyGraphObjectGettersAndSetters(method, args);
+                ProxyMethod proxyMethod = proxyMethods.get(method);
+                if (proxyMethod == null) {
+                    return throwUnexpectedMethodSignature(method);
                 }
 
-                return throwUnexpectedMethodSignature(method);
-            }
-
-            private final Object proxyMapMethods(Method method, Object[] args) {
-                String methodName = method.getName();
-                if (methodName.equals(CLEAR_METHOD)) {
-                    JsonUtil.jsonObjectClear(this.state);
-                    return null;
-                } else if (methodName.equals(CONTAINSKEY_METHOD)) {
-                    return this.state.has((String) args[0]);
-                } else if (methodName.equals(CONTAINSVALUE_METHOD)) {
-                    return JsonUtil.jsonObjectContainsValue(this.state, args[0]);
-                } else if (methodName.equals(ENTRYSET_METHOD)) {
-                    return JsonUtil.jsonObjectEntrySet(this.state);
-                } else if (methodName.equals(GET_METHOD)) {
-                    return this.state.opt((String) args[0]);
-                } else if (methodName.equals(ISEMPTY_METHOD)) {
-                    return this.state.length() == 0;
-                } else if (methodName.equals(KEYSET_METHOD)) {
-                    return JsonUtil.jsonObjectKeySet(this.state);
-                } else if (methodName.equals(PUT_METHOD)) {
-                    return setJSONProperty(args);
-                } else if (methodName.equals(PUTALL_METHOD)) {
-                    Map<String, Object> map = null;
-                    if (args[0] instanceof Map<?, ?>) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> castMap = (Map<String, Object>) args[0];
-                        map = castMap;
-                    } else if (args[0] instanceof GraphObject) {
-                        map = ((GraphObject) args[0]).asMap();
-                    } else {
+                switch (proxyMethod.kind) {
+                    case EQUALS:
+                        return proxyEquals(args[0]);
+                    case HASH_CODE:
+                        return this.state.hashCode();
+                    case TO_STRING:
+                        return toString();
+                    case CLEAR:
+                        JsonUtil.jsonObjectClear(this.state);
+                        return null;
+                    case CONTAINS_KEY:
+                        return this.state.has((String) args[0]);
+                    case CONTAINS_VALUE:
+                        return JsonUtil.jsonObjectContainsValue(this.state, args[0]);
+                    case ENTRY_SET:
+                        return JsonUtil.jsonObjectEntrySet(this.state);
+                    case GET:
+                        return this.state.opt((String) args[0]);
+                    case IS_EMPTY:
+                        return this.state.length() == 0;
+                    case KEY_SET:
+                        return JsonUtil.jsonObjectKeySet(this.state);
+                    case PUT:
+                        return setJSONProperty(args);
+                    case PUT_ALL:
+                        return putAll(args[0]);
+                    case REMOVE:
+                        this.state.remove((String) args[0]);
+                        return null;
+                    case SIZE:
+                        return this.state.length();
+                    case VALUES:
+                        return JsonUtil.jsonObjectValues(this.state);
+                    case CAST:
+                        return cast(proxy, args[0]);
+                    case CAST_TO_MAP:
+                        return Factory.createGraphObjectProxyForMap(this.state);
+                    case GET_INNER_JSON_OBJECT:
+                        return this.state;
+                    case GET_PROPERTY:
+                        return this.state.opt((String) args[0]);
+                    case GET_PROPERTY_AS:
+                        return coerceValueToExpectedType(this.state.opt((String) args[0]), (Class<?>) args[1], null);
+                    case GET_PROPERTY_AS_LIST:
+                        return coerceValueToExpectedType(this.state.opt((String) args[0]), GraphObjectList.class,
+                                createListType((Class<?>) args[1]));
+                    case SET_PROPERTY:
+                        return setJSONProperty(args);
+                    case REMOVE_PROPERTY:
+                        this.state.remove((String) args[0]);
+                        return null;
+                    case GET_LONG_PROPERTY:
+                        return this.state.optLong((String) args[0], (Long) args[1]);
+                    case GET_DOUBLE_PROPERTY:
+                        return this.state.optDouble((String) args[0], (Double) args[1]);
+                    case GET_BOOLEAN_PROPERTY:
+                        return this.state.optBoolean((String) args[0], (Boolean) args[1]);
+                    case GETTER:
+                        // ASSUMPTION: The GraphObject-derived class has been verified
+                        return coerceValueToExpectedType(this.state.opt(proxyMethod.key), proxyMethod.returnType,
+                                proxyMethod.parameterizedReturnType);
+                    case LONG_GETTER:
+                        return boxLong(this.state.optLong(proxyMethod.key, 0), proxyMethod.returnType);
+                    case DOUBLE_GETTER:
+                        double doubleValue = this.state.optDouble(proxyMethod.key, 0);
+                        return (proxyMethod.returnType == float.class) ? Float.valueOf((float) doubleValue) :
+                                Double.valueOf(doubleValue);
+                    case BOOLEAN_GETTER:
+                        return this.state.optBoolean(proxyMethod.key, false);
+                    case SETTER:
+                        // ASSUMPTION: The GraphObject-derived class has been verified
+                        Object value = createGraphObjectsFromParameters(proxyMethod.createGraphObjectPropertyName,
+                                args[0]);
+
+                        // If this is a wrapped object, store the underlying JSONObject instead, in order to serialize
+                        // correctly.
+                        value = getUnderlyingJSONObject(value);
+                        this.state.putOpt(proxyMethod.key, value);
                         return null;
-                    }
-                    JsonUtil.jsonObjectPutAll(this.state, map);
-                    return null;
-                } else if (methodName.equals(REMOVE_METHOD)) {
-                    this.state.remove((String) args[0]);
-                    return null;
-                } else if (methodName.equals(SIZE_METHOD)) {
-                    return this.state.length();
-                } else if (methodName.equals(VALUES_METHOD)) {
-                    return JsonUtil.jsonObjectValues(this.state);
                 }
 
                 return throwUnexpectedMethodSignature(method);
             }
 
-            private final Object proxyGraphObjectMethods(Object proxy, Method method, Object[] args) {
-                String methodName = method.getName();
-                if (methodName.equals(CAST_METHOD)) {
-                    @SuppressWarnings("unchecked")
-                    Class<? extends GraphObject> graphObjectClass = (Class<? extends GraphObject>) args[0];
-
-                    if (graphObjectClass != null &&
-                            graphObjectClass.isAssignableFrom(this.graphObjectClass)) {
-                        return proxy;
-                    }
-                    return Factory.createGraphObjectProxy(graphObjectClass, this.state);
-                } else if (methodName.equals(GETINNERJSONOBJECT_METHOD)) {
-                    InvocationHandler handler = Proxy.getInvocationHandler(proxy);
-                    GraphObjectProxy otherProxy = (GraphObjectProxy) handler;
-                    return otherProxy.state;
-                } else if (methodName.equals(CASTTOMAP_METHOD)) {
-                    return Factory.createGraphObjectProxyForMap(this.state);
-                } else if (methodName.equals(GETPROPERTY_METHOD)) {
-                    return state.opt((String) args[0]);
-                } else if (methodName.equals(GETPROPERTYAS_METHOD)) {
-                    Object value = state.opt((String) args[0]);
-                    Class<?> expectedType = (Class<?>) args[1];
-
-                    return coerceValueToExpectedType(value, expectedType, null);
-                } else if (methodName.equals(GETPROPERTYASLIST_METHOD)) {
-                    Object value = state.opt((String) args[0]);
-                    final Class<?> expectedType = (Class<?>) args[1];
-
-                    ParameterizedType parameterizedType = new ParameterizedType() {
-                        @Override
-                        public Type[] getActualTypeArguments() {
-                            return new Type[]{ expectedType };
-                        }
-
-                        @Override
-                        public Type getOwnerType() {
-                            return null;
-                        }
-
-                        @Override
-                        public Type getRawType() {
-                            return GraphObjectList.class;
-                        }
-                    };
-                    return coerceValueToExpectedType(value, GraphObjectList.class, parameterizedType);
-                } else if (methodName.equals(SETPROPERTY_METHOD)) {
-                    return setJSONProperty(args);
-                } else if (methodName.equals(REMOVEPROPERTY_METHOD)) {
-                    this.state.remove((String) args[0]);
-                    return null;
+            // A proxy must return the box of its method's exact primitive return type.
+            private static Object boxLong(long value, Class<?> returnType) {
+                if (returnType == int.class) {
+                    return Integer.valueOf((int) value);
+                } else if (returnType == short.class) {
+                    return Short.valueOf((short) value);
+                } else if (returnType == byte.class) {
+                    return Byte.valueOf((byte) value);
                 }
-
-                return throwUnexpectedMethodSignature(method);
+                return Long.valueOf(value);
             }
 
-            private Object createGraphObjectsFromParameters(CreateGraphObject createGraphObject, Object value) {
-                if (createGraphObject != null &&
-                        !Utility.isNullOrEmpty(createGraphObject.value())) {
-                    String propertyName = createGraphObject.value();
-                    if (List.class.isAssignableFrom(value.getClass())) {
-                        GraphObjectList<GraphObject> graphObjects = Factory.createList(GraphObject.class);
-                        @SuppressWarnings("unchecked")
-                        List<Object> values = (List<Object>)value;
-                        for (Object obj : values) {
-                            GraphObject graphObject = Factory.create();
-                            graphObject.setProperty(propertyName, obj);
-                            graphObjects.add(graphObject);
-                        }
-
-                        value = graphObjects;
-                    } else {
-                        GraphObject graphObject = Factory.create();
-                        graphObject.setProperty(propertyName, value);
+            private Object cast(Object proxy, Object graphObjectClassArg) {
+                @SuppressWarnings("unchecked")
+                Class<? extends GraphObject> graphObjectClass = (Class<? extends GraphObject>) graphObjectClassArg;
 
-                        value = graphObject;
-                    }
+                if (graphObjectClass != null &&
+                        graphObjectClass.isAssignableFrom(this.graphObjectClass)) {
+                    return proxy;
                 }
-
-                return value;
+                return Factory.createGraphObjectProxy(graphObjectClass, this.state);
             }
 
-            private final Object proxyGraphObjectGettersAndSetters(Method method, Object[] args) throws JSONException {
-                String methodName = method.getName();
-                int parameterCount = method.getParameterTypes().length;
-                PropertyName propertyNameOverride = method.getAnnotation(PropertyName.class);
-
-                String key = propertyNameOverride != null ? propertyNameOverride.value() :
-                        convertCamelCaseToLowercaseWithUnderscores(methodName.substring(3));
-
-                // If it's a get or a set on a GraphObject-derived class, we can handle it.
-                if (parameterCount == 0) {
-                    // Has to be a getter. ASSUMPTION: The GraphObject-derived class has been verified
-                    Object value = this.state.opt(key);
-
-                    Class<?> expectedType = method.getReturnType();
-
-                    Type genericReturnType = method.getGenericReturnType();
-                    ParameterizedType parameterizedReturnType = null;
-                    if (genericReturnType instanceof ParameterizedType) {
-                        parameterizedReturnType = (ParameterizedType) genericReturnType;
-                    }
-
-                    value = coerceValueToExpectedType(value, expectedType, parameterizedReturnType);
-
-                    return value;
-                } else if (parameterCount == 1) {
-                    // Has to be a setter. ASSUMPTION: The GraphObject-derived class has been verified
-                    CreateGraphObject createGraphObjectAnnotation = method.getAnnotation(CreateGraphObject.class);
-                    Object value = createGraphObjectsFromParameters(createGraphObjectAnnotation, args[0]);
-
-                    // If this is a wrapped object, store the underlying JSONObject instead, in order to serialize
-                    // correctly.
-                    value = getUnderlyingJSONObject(value);
-                    this.state.putOpt(key, value);
+            private Object putAll(Object arg) {
+                Map<String, Object> map = null;
+                if (arg instanceof Map<?, ?>) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> castMap = (Map<String, Object>) arg;
+                    map = castMap;
+                } else if (arg instanceof GraphObject) {
+                    map = ((GraphObject) arg).asMap();
+                } else {
                     return null;
                 }
-
-                return throwUnexpectedMethodSignature(method);
+                JsonUtil.jsonObjectPutAll(this.state, map);
+                return null;
             }
 
             private Object setJSONProperty(Object[] args) {
@@ -706,6 +879,11 @@ public interface GraphObject {
         private final static class GraphObjectListImpl<T> extends AbstractList<T> implements GraphObjectList<T> {
             private final JSONArray state;
             private final Class<?> itemType;
+            // The GraphObject last returned for each index, so that getting the same item again, or iterating the
+            // list again, reuses it rather than wrapping the item anew.  An entry is only used while the item at
+            // its index is still the JSONObject it wraps.  Allocated on first use; like the JSONArray itself, not meant
+            // for use from several threads at once.
+            private GraphObject[] items;
 
             public GraphObjectListImpl(JSONArray state, Class<?> itemType) {
                 Validate.notNull(state, "state");
@@ -766,11 +944,18 @@ public interface GraphObject {
                 checkIndex(location);
 
                 Object value = state.opt(location);
+                if (items != null && location < items.length && items[location] != null &&
+                        items[location].getInnerJSONObject() == value) {
+                    return (T) items[location];
+                }
 
                 // Class<?> expectedType = method.getReturnType();
                 // Type genericType = method.getGenericReturnType();
                 T result = (T) coerceValueToExpectedType(value, itemType, null);
 
+                if (result instanceof GraphObject && value instanceof JSONObject) {
+                    cacheItem(location, (GraphObject) result);
+                }
                 return result;
             }
 
@@ -800,6 +985,26 @@ public interface GraphObject {
                 return state;
             }
 
+            @Override
+            public final void visitInnerJSONObjects(InnerJSONObjectVisitor visitor) {
+                Validate.notNull(visitor, "visitor");
+
+                int length = state.length();
+                for (int i = 0; i < length; i++) {
+                    Object value = state.opt(i);
+                    JSONObject innerJSONObject = null;
+                    if (value instanceof JSONObject) {
+                        innerJSONObject = (JSONObject) value;
+                    } else if (value instanceof GraphObject) {
+                        innerJSONObject = ((GraphObject) value).getInnerJSONObject();
+                    }
+
+                    if (innerJSONObject != null && !visitor.visit(i, innerJSONObject)) {
+                        return;
+                    }
+                }
+            }
+
             @Override
             public void clear() {
                 throw new UnsupportedOperationException();
@@ -833,6 +1038,22 @@ public interface GraphObject {
                 } catch (JSONException e) {
                     throw new IllegalArgumentException(e);
                 }
+                if (obj instanceof GraphObject && itemType.isInstance(obj)) {
+                    cacheItem(index, (GraphObject) obj);
+                } else if (items != null && index < items.length) {
+                    items[index] = null;
+                }
+            }
+
+            private void cacheItem(int index, GraphObject item) {
+                if (items == null || index >= items.length) {
+                    GraphObject[] newItems = new GraphObject[Math.max(index + 1, state.length())];
+                    if (items != null) {
+                        System.arraycopy(items, 0, newItems, 0, items.length);
+                    }
+                    items = newItems;
+                }
+                items[index] = item;
             }
         }
     }
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import com.facebook.internal.Validate;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.Map;
+
+// A GraphObject backed directly by a JSONObject, without going through java.lang.reflect.Proxy.  Subclasses implement
+// the getters and setters of one GraphObject-derived interface each, and are registered with GraphObject.Factory,
+// which hands them out in place of a proxy when exactly that interface is requested.  Each accessor maps to the
+// same JSON key the proxy would use, so the two are interchangeable: getProperty(key, type), which converts values
+// with the same rules as the proxy, for getters of object types; getLongProperty, getDoubleProperty and
+// getBooleanProperty for primitive getters, so they don't box; and setProperty(key, value) for setters.
+class GraphObjectImpl implements GraphObject {
+    interface Creator {
+        GraphObject create(JSONObject state);
+    }
+
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new GraphObjectImpl(state, GraphObject.class);
+        }
+    };
+
+    final JSONObject state;
+    private final Class<? extends GraphObject> graphObjectClass;
+
+    GraphObjectImpl(JSONObject state, Class<? extends GraphObject> graphObjectClass) {
+        Validate.notNull(state, "state");
+
+        this.state = state;
+        this.graphObjectClass = graphObjectClass;
+    }
+
+    @Override
+    public <T extends GraphObject> T cast(Class<T> graphObjectClass) {
+        if (graphObjectClass != null && graphObjectClass.isInstance(this)) {
+            return graphObjectClass.cast(this);
+        }
+        return Factory.create(state, graphObjectClass);
+    }
+
+    @Override
+    public Map<String, Object> asMap() {
+        return Factory.createGraphObjectProxyForMap(state);
+    }
+
+    @Override
+    public JSONObject getInnerJSONObject() {
+        return state;
+    }
+
+    @Override
+    public Object getProperty(String propertyName) {
+        return state.opt(propertyName);
+    }
+
+    @Override
+    public <T extends GraphObject> T getPropertyAs(String propertyName, Class<T> graphObjectClass) {
+        return Factory.coerceValueToExpectedType(state.opt(propertyName), graphObjectClass, null);
+    }
+
+    @Override
+    public <T extends GraphObject> GraphObjectList<T> getPropertyAsList(String propertyName,
+            Class<T> graphObjectClass) {
+        @SuppressWarnings("unchecked")
+        GraphObjectList<T> result = Factory.coerceValueToExpectedType(state.opt(propertyName),
+                GraphObjectList.class, Factory.createListType(graphObjectClass));
+        return result;
+    }
+
+    @Override
+    public long getLongProperty(String propertyName, long defaultValue) {
+        return state.optLong(propertyName, defaultValue);
+    }
+
+    @Override
+    public double getDoubleProperty(String propertyName, double defaultValue) {
+        return state.optDouble(propertyName, defaultValue);
+    }
+
+    @Override
+    public boolean getBooleanProperty(String propertyName, boolean defaultValue) {
+        return state.optBoolean(propertyName, defaultValue);
+    }
+
+    @Override
+    public void setProperty(String propertyName, Object propertyValue) {
+        Object value = Factory.getUnderlyingJSONObject(propertyValue);
+        try {
+            state.putOpt(propertyName, value);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public void removeProperty(String propertyName) {
+        state.remove(propertyName);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GraphObject)) {
+            return false;
+        }
+        return state.equals(((GraphObject) other).getInnerJSONObject());
+    }
+
+    @Override
+    public int hashCode() {
+        return state.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GraphObject{graphObjectClass=%s, state=%s}", graphObjectClass.getSimpleName(), state);
+    }
+
+    final <U> U getProperty(String key, Class<U> expectedType) {
+        return Factory.coerceValueToExpectedType(state.opt(key), expectedType, null);
+    }
+
+    final <U> U getProperty(String key, Class<U> expectedType, ParameterizedType expectedTypeAsParameterizedType) {
+        return Factory.coerceValueToExpectedType(state.opt(key), expectedType, expectedTypeAsParameterizedType);
+    }
+}
@@ -17,6 +17,7 @@
 package com.facebook.model;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.util.List;
 
@@ -44,4 +45,25 @@ public interface GraphObjectList<T> extends List<T> {
      * @return the underlying JSONArray representation of the data
      */
     public JSONArray getInnerJSONArray();
+
+    /**
+     * Passes the underlying JSONObject of each item, in order, to a visitor, without creating a GraphObject for
+     * any of them. This is cheaper than iterating the list when only a few properties of each item are needed.
+     * Items that are not JSON objects are skipped.
+     * @param visitor the visitor to pass each item to
+     */
+    public void visitInnerJSONObjects(InnerJSONObjectVisitor visitor);
+
+    /**
+     * Receives the items of a GraphObjectList; see {@link GraphObjectList#visitInnerJSONObjects}.
+     */
+    public interface InnerJSONObjectVisitor {
+        /**
+         * Called for each item of the list.
+         * @param index the index of the item in the list
+         * @param innerJSONObject the underlying JSONObject of the item
+         * @return true to go on to the next item, false to stop
+         */
+        boolean visit(int index, JSONObject innerJSONObject);
+    }
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONObject;
+
+// The GraphObjectImpl for GraphPlace; see GraphObjectImpl.
+final class GraphPlaceImpl extends GraphObjectImpl implements GraphPlace {
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new GraphPlaceImpl(state);
+        }
+    };
+
+    GraphPlaceImpl(JSONObject state) {
+        super(state, GraphPlace.class);
+    }
+
+    @Override
+    public String getId() {
+        return getProperty("id", String.class);
+    }
+
+    @Override
+    public void setId(String id) {
+        setProperty("id", id);
+    }
+
+    @Override
+    public String getName() {
+        return getProperty("name", String.class);
+    }
+
+    @Override
+    public void setName(String name) {
+        setProperty("name", name);
+    }
+
+    @Override
+    public String getCategory() {
+        return getProperty("category", String.class);
+    }
+
+    @Override
+    public void setCategory(String category) {
+        setProperty("category", category);
+    }
+
+    @Override
+    public GraphLocation getLocation() {
+        return getProperty("location", GraphLocation.class);
+    }
+
+    @Override
+    public void setLocation(GraphLocation location) {
+        setProperty("location", location);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONObject;
+
+// The GraphObjectImpl for GraphUser; see GraphObjectImpl.
+final class GraphUserImpl extends GraphObjectImpl implements GraphUser {
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new GraphUserImpl(state);
+        }
+    };
+
+    GraphUserImpl(JSONObject state) {
+        super(state, GraphUser.class);
+    }
+
+    @Override
+    public String getId() {
+        return getProperty("id", String.class);
+    }
+
+    @Override
+    public void setId(String id) {
+        setProperty("id", id);
+    }
+
+    @Override
+    public String getName() {
+        return getProperty("name", String.class);
+    }
+
+    @Override
+    public void setName(String name) {
+        setProperty("name", name);
+    }
+
+    @Override
+    public String getFirstName() {
+        return getProperty("first_name", String.class);
+    }
+
+    @Override
+    public void setFirstName(String firstName) {
+        setProperty("first_name", firstName);
+    }
+
+    @Override
+    public String getMiddleName() {
+        return getProperty("middle_name", String.class);
+    }
+
+    @Override
+    public void setMiddleName(String middleName) {
+        setProperty("middle_name", middleName);
+    }
+
+    @Override
+    public String getLastName() {
+        return getProperty("last_name", String.class);
+    }
+
+    @Override
+    public void setLastName(String lastName) {
+        setProperty("last_name", lastName);
+    }
+
+    @Override
+    public String getLink() {
+        return getProperty("link", String.class);
+    }
+
+    @Override
+    public void setLink(String link) {
+        setProperty("link", link);
+    }
+
+    @Override
+    public String getUsername() {
+        return getProperty("username", String.class);
+    }
+
+    @Override
+    public void setUsername(String username) {
+        setProperty("username", username);
+    }
+
+    @Override
+    public String getBirthday() {
+        return getProperty("birthday", String.class);
+    }
+
+    @Override
+    public void setBirthday(String birthday) {
+        setProperty("birthday", birthday);
+    }
+
+    @Override
+    public GraphLocation getLocation() {
+        return getProperty("location", GraphLocation.class);
+    }
+
+    @Override
+    public void setLocation(GraphLocation location) {
+        setProperty("location", location);
+    }
+}
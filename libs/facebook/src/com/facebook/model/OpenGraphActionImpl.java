@@ -0,0 +1,231 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONObject;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.Date;
+import java.util.List;
+
+// The GraphObjectImpl for OpenGraphAction; see GraphObjectImpl.
+final class OpenGraphActionImpl extends GraphObjectImpl implements OpenGraphAction {
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new OpenGraphActionImpl(state);
+        }
+    };
+
+    private static final ParameterizedType GRAPH_OBJECT_LIST_TYPE =
+            GraphObject.Factory.createListType(GraphObject.class);
+    private static final ParameterizedType JSON_OBJECT_LIST_TYPE =
+            GraphObject.Factory.createListType(JSONObject.class);
+
+    OpenGraphActionImpl(JSONObject state) {
+        super(state, OpenGraphAction.class);
+    }
+
+    @Override
+    public String getId() {
+        return getProperty("id", String.class);
+    }
+
+    @Override
+    public void setId(String id) {
+        setProperty("id", id);
+    }
+
+    @Override
+    public String getType() {
+        return getProperty("type", String.class);
+    }
+
+    @Override
+    public void setType(String type) {
+        setProperty("type", type);
+    }
+
+    @Override
+    public Date getStartTime() {
+        return getProperty("start_time", Date.class);
+    }
+
+    @Override
+    public void setStartTime(Date startTime) {
+        setProperty("start_time", startTime);
+    }
+
+    @Override
+    public Date getEndTime() {
+        return getProperty("end_time", Date.class);
+    }
+
+    @Override
+    public void setEndTime(Date endTime) {
+        setProperty("end_time", endTime);
+    }
+
+    @Override
+    public Date getPublishTime() {
+        return getProperty("publish_time", Date.class);
+    }
+
+    @Override
+    public void setPublishTime(Date publishTime) {
+        setProperty("publish_time", publishTime);
+    }
+
+    @Override
+    public Date getCreatedTime() {
+        return getProperty("created_time", Date.class);
+    }
+
+    @Override
+    public void setCreatedTime(Date createdTime) {
+        setProperty("created_time", createdTime);
+    }
+
+    @Override
+    public Date getExpiresTime() {
+        return getProperty("expires_time", Date.class);
+    }
+
+    @Override
+    public void setExpiresTime(Date expiresTime) {
+        setProperty("expires_time", expiresTime);
+    }
+
+    @Override
+    public String getRef() {
+        return getProperty("ref", String.class);
+    }
+
+    @Override
+    public void setRef(String ref) {
+        setProperty("ref", ref);
+    }
+
+    @Override
+    public String getMessage() {
+        return getProperty("message", String.class);
+    }
+
+    @Override
+    public void setMessage(String message) {
+        setProperty("message", message);
+    }
+
+    @Override
+    public GraphPlace getPlace() {
+        return getProperty("place", GraphPlace.class);
+    }
+
+    @Override
+    public void setPlace(GraphPlace place) {
+        setProperty("place", place);
+    }
+
+    @Override
+    public GraphObjectList<GraphObject> getTags() {
+        @SuppressWarnings("unchecked")
+        GraphObjectList<GraphObject> result = getProperty("tags", GraphObjectList.class, GRAPH_OBJECT_LIST_TYPE);
+        return result;
+    }
+
+    @Override
+    public void setTags(List<? extends GraphObject> tags) {
+        setProperty("tags", tags);
+    }
+
+    @Override
+    public List<JSONObject> getImage() {
+        @SuppressWarnings("unchecked")
+        List<JSONObject> result = getProperty("image", List.class, JSON_OBJECT_LIST_TYPE);
+        return result;
+    }
+
+    @Override
+    public void setImage(List<JSONObject> image) {
+        setProperty("image", image);
+    }
+
+    @Override
+    public void setImageUrls(List<String> urls) {
+        setProperty("image", GraphObject.Factory.createGraphObjectsFromParameters("url", urls));
+    }
+
+    @Override
+    public GraphUser getFrom() {
+        return getProperty("from", GraphUser.class);
+    }
+
+    @Override
+    public void setFrom(GraphUser from) {
+        setProperty("from", from);
+    }
+
+    @Override
+    public JSONObject getLikes() {
+        return getProperty("likes", JSONObject.class);
+    }
+
+    @Override
+    public void setLikes(JSONObject likes) {
+        setProperty("likes", likes);
+    }
+
+    @Override
+    public GraphObject getApplication() {
+        return getProperty("application", GraphObject.class);
+    }
+
+    @Override
+    public void setApplication(GraphObject application) {
+        setProperty("application", application);
+    }
+
+    @Override
+    public JSONObject getComments() {
+        return getProperty("comments", JSONObject.class);
+    }
+
+    @Override
+    public void setComments(JSONObject comments) {
+        setProperty("comments", comments);
+    }
+
+    @Override
+    public GraphObject getData() {
+        return getProperty("data", GraphObject.class);
+    }
+
+    @Override
+    public void setData(GraphObject data) {
+        setProperty("data", data);
+    }
+
+    @Override
+    public boolean getExplicitlyShared() {
+        return getBooleanProperty("fb:explicitly_shared", false);
+    }
+
+    @Override
+    public void setExplicitlyShared(boolean explicitlyShared) {
+        setProperty("fb:explicitly_shared", explicitlyShared);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import com.facebook.internal.NativeProtocol;
+import org.json.JSONObject;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.Date;
+import java.util.List;
+
+// The GraphObjectImpl for OpenGraphObject; see GraphObjectImpl.
+final class OpenGraphObjectImpl extends GraphObjectImpl implements OpenGraphObject {
+    static final Creator CREATOR = new Creator() {
+        @Override
+        public GraphObject create(JSONObject state) {
+            return new OpenGraphObjectImpl(state);
+        }
+    };
+
+    private static final ParameterizedType GRAPH_OBJECT_LIST_TYPE =
+            GraphObject.Factory.createListType(GraphObject.class);
+    private static final ParameterizedType STRING_LIST_TYPE =
+            GraphObject.Factory.createListType(String.class);
+
+    OpenGraphObjectImpl(JSONObject state) {
+        super(state, OpenGraphObject.class);
+    }
+
+    @Override
+    public String getId() {
+        return getProperty("id", String.class);
+    }
+
+    @Override
+    public void setId(String id) {
+        setProperty("id", id);
+    }
+
+    @Override
+    public String getType() {
+        return getProperty("type", String.class);
+    }
+
+    @Override
+    public void setType(String type) {
+        setProperty("type", type);
+    }
+
+    @Override
+    public String getUrl() {
+        return getProperty("url", String.class);
+    }
+
+    @Override
+    public void setUrl(String url) {
+        setProperty("url", url);
+    }
+
+    @Override
+    public String getTitle() {
+        return getProperty("title", String.class);
+    }
+
+    @Override
+    public void setTitle(String title) {
+        setProperty("title", title);
+    }
+
+    @Override
+    public String getDescription() {
+        return getProperty("description", String.class);
+    }
+
+    @Override
+    public void setDescription(String description) {
+        setProperty("description", description);
+    }
+
+    @Override
+    public GraphObjectList<GraphObject> getImage() {
+        @SuppressWarnings("unchecked")
+        GraphObjectList<GraphObject> result = getProperty("image", GraphObjectList.class, GRAPH_OBJECT_LIST_TYPE);
+        return result;
+    }
+
+    @Override
+    public void setImage(GraphObjectList<GraphObject> images) {
+        setProperty("image", images);
+    }
+
+    @Override
+    public void setImageUrls(List<String> urls) {
+        setProperty("image", GraphObject.Factory.createGraphObjectsFromParameters("url", urls));
+    }
+
+    @Override
+    public GraphObjectList<GraphObject> getVideo() {
+        @SuppressWarnings("unchecked")
+        GraphObjectList<GraphObject> result = getProperty("video", GraphObjectList.class, GRAPH_OBJECT_LIST_TYPE);
+        return result;
+    }
+
+    @Override
+    public void setVideo(GraphObjectList<GraphObject> videos) {
+        setProperty("video", videos);
+    }
+
+    @Override
+    public GraphObjectList<GraphObject> getAudio() {
+        @SuppressWarnings("unchecked")
+        GraphObjectList<GraphObject> result = getProperty("audio", GraphObjectList.class, GRAPH_OBJECT_LIST_TYPE);
+        return result;
+    }
+
+    @Override
+    public void setAudio(GraphObjectList<GraphObject> audios) {
+        setProperty("audio", audios);
+    }
+
+    @Override
+    public String getDeterminer() {
+        return getProperty("determiner", String.class);
+    }
+
+    @Override
+    public void setDeterminer(String determiner) {
+        setProperty("determiner", determiner);
+    }
+
+    @Override
+    public List<String> getSeeAlso() {
+        @SuppressWarnings("unchecked")
+        List<String> result = getProperty("see_also", List.class, STRING_LIST_TYPE);
+        return result;
+    }
+
+    @Override
+    public void setSeeAlso(List<String> seeAlso) {
+        setProperty("see_also", seeAlso);
+    }
+
+    @Override
+    public String getSiteName() {
+        return getProperty("site_name", String.class);
+    }
+
+    @Override
+    public void setSiteName(String siteName) {
+        setProperty("site_name", siteName);
+    }
+
+    @Override
+    public Date getCreatedTime() {
+        return getProperty("created_time", Date.class);
+    }
+
+    @Override
+    public void setCreatedTime(Date createdTime) {
+        setProperty("created_time", createdTime);
+    }
+
+    @Override
+    public Date getUpdatedTime() {
+        return getProperty("updated_time", Date.class);
+    }
+
+    @Override
+    public void setUpdatedTime(Date updatedTime) {
+        setProperty("updated_time", updatedTime);
+    }
+
+    @Override
+    public GraphObject getApplication() {
+        return getProperty("application", GraphObject.class);
+    }
+
+    @Override
+    public void setApplication(GraphObject application) {
+        setProperty("application", application);
+    }
+
+    @Override
+    public boolean getIsScraped() {
+        return getBooleanProperty("is_scraped", false);
+    }
+
+    @Override
+    public void setIsScraped(boolean isScraped) {
+        setProperty("is_scraped", isScraped);
+    }
+
+    @Override
+    public String getPostActionId() {
+        return getProperty("post_action_id", String.class);
+    }
+
+    @Override
+    public void setPostActionId(String postActionId) {
+        setProperty("post_action_id", postActionId);
+    }
+
+    @Override
+    public GraphObject getData() {
+        return getProperty("data", GraphObject.class);
+    }
+
+    @Override
+    public void setData(GraphObject data) {
+        setProperty("data", data);
+    }
+
+    @Override
+    public boolean getCreateObject() {
+        return getBooleanProperty(NativeProtocol.OPEN_GRAPH_CREATE_OBJECT_KEY, false);
+    }
+
+    @Override
+    public void setCreateObject(boolean createObject) {
+        setProperty(NativeProtocol.OPEN_GRAPH_CREATE_OBJECT_KEY, createObject);
+    }
+}
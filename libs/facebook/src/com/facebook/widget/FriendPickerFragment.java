@@ -28,7 +28,9 @@ import com.facebook.Request;
 import com.facebook.Session;
 import com.facebook.android.R;
 import com.facebook.internal.AnalyticsEvents;
+import com.facebook.model.GraphObjectList;
 import com.facebook.model.GraphUser;
+import org.json.JSONObject;
 
 import java.util.*;
 
@@ -141,9 +143,21 @@ public class FriendPickerFragment extends PickerFragment<GraphUser> {
      * @param graphUsers list of friends as GraphUsers
      */
     public void setSelection(List<GraphUser> graphUsers) {
-        List<String> userIds = new ArrayList<String>();
-        for(GraphUser graphUser: graphUsers) {
-            userIds.add(graphUser.getId());
+        final List<String> userIds = new ArrayList<String>();
+        if (graphUsers instanceof GraphObjectList) {
+            // Only the ids are needed, so read them without wrapping each friend in a GraphUser.
+            ((GraphObjectList<GraphUser>) graphUsers).visitInnerJSONObjects(
+                    new GraphObjectList.InnerJSONObjectVisitor() {
+                        @Override
+                        public boolean visit(int index, JSONObject innerJSONObject) {
+                            userIds.add(innerJSONObject.optString("id", null));
+                            return true;
+                        }
+                    });
+        } else {
+            for(GraphUser graphUser: graphUsers) {
+                userIds.add(graphUser.getId());
+            }
         }
         setSelectionByIds(userIds);
     }
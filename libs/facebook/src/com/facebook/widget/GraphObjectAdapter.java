@@ -18,6 +18,8 @@ package com.facebook.widget;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -25,6 +27,7 @@ import android.view.ViewStub;
 import android.widget.*;
 import com.facebook.*;
 import com.facebook.android.R;
+import com.facebook.internal.BitmapPool;
 import com.facebook.internal.ImageDownloader;
 import com.facebook.internal.ImageRequest;
 import com.facebook.internal.ImageResponse;
@@ -193,10 +196,12 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
         // move it to the front of the queue. And we want the earliest ones in the range to be at
         // the front of the queue, so all else being equal, the list will appear to populate from
         // the top down.
-        for (int i = lastVisibleItem; i >= 0; i--) {
+        Set<String> idsInRange = new HashSet<String>();
+        for (int i = lastVisibleItem; i >= firstVisibleItem; i--) {
             SectionAndItem<T> sectionAndItem = getSectionAndItem(i);
             if (sectionAndItem.graphObject != null) {
                 String id = getIdOfGraphObject(sectionAndItem.graphObject);
+                idsInRange.add(id);
                 ImageRequest request = pendingRequests.get(id);
                 if (request != null) {
                     ImageDownloader.prioritizeRequest(request);
@@ -225,6 +230,13 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
         for (T graphObject : graphObjectsToPrefetchPicturesFor) {
             URI uri = getPictureUriOfGraphObject(graphObject);
             final String id = getIdOfGraphObject(graphObject);
+            idsInRange.add(id);
+
+            // Rows that were visible a moment ago may still have requests waiting; they are now only a prefetch.
+            ImageRequest pendingRequest = pendingRequests.get(id);
+            if (pendingRequest != null) {
+                ImageDownloader.setRequestPriority(pendingRequest, ImageRequest.Priority.PREFETCH);
+            }
 
             // This URL already have been requested for pre-fetching, but we want to act in an LRU manner, so move
             // it to the end of the list regardless.
@@ -236,6 +248,14 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                 downloadProfilePicture(id, uri, null);
             }
         }
+
+        // Anything else still waiting belongs to rows that have scrolled well out of view, so it shouldn't hold
+        // up the rows on screen.
+        for (Map.Entry<String, ImageRequest> entry : pendingRequests.entrySet()) {
+            if (!idsInRange.contains(entry.getKey())) {
+                ImageDownloader.setRequestPriority(entry.getValue(), ImageRequest.Priority.BACKGROUND);
+            }
+        }
     }
 
     protected String getSectionKeyOfGraphObject(T graphObject) {
@@ -383,7 +403,7 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                 // See if we have already pre-fetched this; if not, download it.
                 if (prefetchedPictureCache.containsKey(id)) {
                     ImageResponse response = prefetchedPictureCache.get(id);
-                    profilePic.setImageBitmap(response.getBitmap());
+                    setPictureBitmap(profilePic, response.getBitmap());
                     profilePic.setTag(response.getRequest().getImageUri());
                 } else {
                     downloadProfilePicture(id, pictureURI, profilePic);
@@ -740,11 +760,13 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                 // Setting the tag to the profile ID indicates that we're currently downloading the
                 // picture for this profile; we'll set it to the actual picture URL when complete.
                 imageView.setTag(profileId);
+                releasePictureBitmap(imageView);
                 imageView.setImageResource(getDefaultPicture());
             }
 
             ImageRequest.Builder builder = new ImageRequest.Builder(context.getApplicationContext(), pictureURI)
                     .setCallerTag(this)
+                    .setPriority(prefetching ? ImageRequest.Priority.PREFETCH : ImageRequest.Priority.VISIBLE)
                     .setCallback(
                             new ImageRequest.Callback() {
                                 @Override
@@ -752,6 +774,12 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                                     processImageResponse(response, profileId, imageView);
                                 }
                             });
+            if (!prefetching && imageView.getLayoutParams() != null) {
+                // Decode no larger than the row's picture; prefetches are kept at full size since the row
+                // they will be shown in isn't known yet.
+                ViewGroup.LayoutParams layoutParams = imageView.getLayoutParams();
+                builder.setTargetSize(layoutParams.width, layoutParams.height);
+            }
 
             ImageRequest newRequest = builder.build();
             pendingRequests.put(profileId, newRequest);
@@ -775,24 +803,48 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
             callOnErrorListener(response.getError());
         }
 
+        // The downloader counted a BitmapPool reference for this response's bitmap, which is ours to give back.
+        Bitmap bitmap = response.getBitmap();
         if (imageView == null) {
             // This was a pre-fetch request.
-            if (response.getBitmap() != null) {
+            if (bitmap != null) {
                 // Is the cache too big?
                 if (prefetchedPictureCache.size() >= MAX_PREFETCHED_PICTURES) {
                     // Find the oldest one and remove it.
                     String oldestId = prefetchedProfilePictureIds.remove(0);
-                    prefetchedPictureCache.remove(oldestId);
+                    releaseResponseBitmap(prefetchedPictureCache.remove(oldestId));
                 }
-                prefetchedPictureCache.put(graphObjectId, response);
+                // The cache keeps the reference until the response is evicted.
+                releaseResponseBitmap(prefetchedPictureCache.put(graphObjectId, response));
             }
-        } else if (graphObjectId.equals(imageView.getTag())) {
-            Exception error = response.getError();
-            Bitmap bitmap = response.getBitmap();
-            if (error == null && bitmap != null) {
-                imageView.setImageBitmap(bitmap);
+        } else {
+            if (graphObjectId.equals(imageView.getTag()) && response.getError() == null && bitmap != null) {
+                setPictureBitmap(imageView, bitmap);
                 imageView.setTag(response.getRequest().getImageUri());
             }
+            // The row took its own reference if it is showing the bitmap.
+            BitmapPool.release(bitmap);
+        }
+    }
+
+    private static void releaseResponseBitmap(ImageResponse response) {
+        if (response != null) {
+            BitmapPool.release(response.getBitmap());
+        }
+    }
+
+    // Rows hold a BitmapPool reference to the picture they show, and hand it back when they are recycled, so that
+    // later downloads can decode into it instead of allocating.
+    private static void setPictureBitmap(ImageView imageView, Bitmap bitmap) {
+        releasePictureBitmap(imageView);
+        BitmapPool.retain(bitmap);
+        imageView.setImageBitmap(bitmap);
+    }
+
+    private static void releasePictureBitmap(ImageView imageView) {
+        Drawable drawable = imageView.getDrawable();
+        if (drawable instanceof BitmapDrawable) {
+            BitmapPool.release(((BitmapDrawable) drawable).getBitmap());
         }
     }
 
@@ -23,6 +23,10 @@ import com.facebook.*;
 import com.facebook.model.GraphObject;
 import com.facebook.model.GraphObjectList;
 import com.facebook.internal.CacheableRequestBatch;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
 
 class GraphObjectPagingLoader<T extends GraphObject> extends Loader<SimpleGraphObjectCursor<T>> {
     private final Class<T> graphObjectClass;
@@ -194,13 +198,23 @@ class GraphObjectPagingLoader<T extends GraphObject> extends Loader<SimpleGraphO
         PagedResults result = response.getGraphObjectAs(PagedResults.class);
         boolean fromCache = response.getIsFromCache();
 
-        GraphObjectList<T> data = result.getData().castToListOf(graphObjectClass);
+        GraphObjectList<GraphObject> data = result.getData();
         boolean haveData = data.size() > 0;
 
         if (haveData) {
             nextRequest = response.getRequestForPagedResults(Response.PagingDirection.NEXT);
 
-            cursorToModify.addGraphObjects(data, fromCache);
+            // Wrap each item once, straight from its JSONObject. Items that are not objects at all (a null in the
+            // "data" array, say) have no id or name for the adapter to show, so they are left out.
+            final List<T> graphObjects = new ArrayList<T>(data.size());
+            data.visitInnerJSONObjects(new GraphObjectList.InnerJSONObjectVisitor() {
+                @Override
+                public boolean visit(int index, JSONObject innerJSONObject) {
+                    graphObjects.add(GraphObject.Factory.create(innerJSONObject, graphObjectClass));
+                    return true;
+                }
+            });
+            cursorToModify.addGraphObjects(graphObjects, fromCache);
             cursorToModify.setMoreObjectsAvailable(true);
         }
 
@@ -343,14 +343,15 @@ public class PlacePickerFragment extends PickerFragment<GraphPlace> {
             @Override
             protected CharSequence getSubTitleOfGraphObject(GraphPlace graphObject) {
                 String category = graphObject.getCategory();
-                Integer wereHereCount = (Integer) graphObject.getProperty(WERE_HERE_COUNT);
+                long wereHereCount = graphObject.getLongProperty(WERE_HERE_COUNT, -1);
+                boolean hasWereHereCount = wereHereCount >= 0;
 
                 String result = null;
-                if (category != null && wereHereCount != null) {
+                if (category != null && hasWereHereCount) {
                     result = getString(R.string.com_facebook_placepicker_subtitle_format, category, wereHereCount);
-                } else if (category == null && wereHereCount != null) {
+                } else if (category == null && hasWereHereCount) {
                     result = getString(R.string.com_facebook_placepicker_subtitle_were_here_only_format, wereHereCount);
-                } else if (category != null && wereHereCount == null) {
+                } else if (category != null && !hasWereHereCount) {
                     result = getString(R.string.com_facebook_placepicker_subtitle_catetory_only_format, category);
                 }
                 return result;
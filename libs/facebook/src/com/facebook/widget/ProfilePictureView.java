@@ -418,6 +418,9 @@ public class ProfilePictureView extends FrameLayout {
 
     private void setImageBitmap(Bitmap imageBitmap) {
         if (image != null && imageBitmap != null) {
+            // Give the previous picture back for reuse once nothing else is showing it
+            BitmapPool.release(imageContents);
+            BitmapPool.retain(imageBitmap);
             imageContents = imageBitmap; // Hold for save-restore cycles
             image.setImageBitmap(imageBitmap);
         }
@@ -431,6 +434,7 @@ public class ProfilePictureView extends FrameLayout {
 
             ImageRequest request = requestBuilder.setAllowCachedRedirects(allowCachedResponse)
                     .setCallerTag(this)
+                    .setTargetSize(queryWidth, queryHeight)
                     .setCallback(
                     new ImageRequest.Callback() {
                         @Override
@@ -458,9 +462,9 @@ public class ProfilePictureView extends FrameLayout {
         // First check if the response is for the right request. We may have:
         // 1. Sent a new request, thus super-ceding this one.
         // 2. Detached this view, in which case the response should be discarded.
+        Bitmap responseImage = response.getBitmap();
         if (response.getRequest() == lastRequest) {
             lastRequest = null;
-            Bitmap responseImage = response.getBitmap();
             Exception error = response.getError();
             if (error != null) {
                 OnErrorListener listener = onErrorListener;
@@ -478,6 +482,8 @@ public class ProfilePictureView extends FrameLayout {
                 }
             }
         }
+        // Give back the reference the downloader counted for this response; setImageBitmap took its own.
+        BitmapPool.release(responseImage);
     }
 
     private boolean updateImageQueryParameters() {
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class RequestCoalescerTests extends AndroidTestCase {
+    @SmallTest
+    public void testUnrelatedRequestsShareOneBatch() {
+        Request first = new Request(null, "me");
+        Request second = new Request(null, "me/friends");
+
+        List<RequestBatch> batches = RequestCoalescer.createBatches(Arrays.asList(first, second));
+
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList(first, second), batches.get(0).getRequests());
+    }
+
+    @SmallTest
+    public void testBatchesDoNotExceedMaximumSize() {
+        List<Request> requests = new ArrayList<Request>();
+        for (int i = 0; i < Request.MAXIMUM_BATCH_SIZE + 1; i++) {
+            requests.add(new Request(null, "me"));
+        }
+
+        List<RequestBatch> batches = RequestCoalescer.createBatches(requests);
+
+        assertEquals(2, batches.size());
+        assertEquals(Request.MAXIMUM_BATCH_SIZE, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+    }
+
+    @SmallTest
+    public void testRequestWithOverriddenUrlIsSentAlone() throws Exception {
+        Request first = new Request(null, "me");
+        Request page = new Request(null, new URL("https://graph.facebook.com/me/home?limit=25&until=1393700000"));
+        Request second = new Request(null, "me/friends");
+
+        List<RequestBatch> batches = RequestCoalescer.createBatches(Arrays.asList(first, page, second));
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList(page), batches.get(0).getRequests());
+        assertEquals(Arrays.asList(first, second), batches.get(1).getRequests());
+    }
+
+    @SmallTest
+    public void testDependentIsBatchedWithEntryEnqueuedAfterIt() {
+        List<Request> requests = new ArrayList<Request>();
+        for (int i = 0; i < Request.MAXIMUM_BATCH_SIZE - 1; i++) {
+            requests.add(new Request(null, "me"));
+        }
+        Request child = new Request(null, "{result=parent:$.id}");
+        child.setBatchEntryDependsOn("parent");
+        Request parent = new Request(null, "me");
+        parent.setBatchEntryName("parent");
+        // The child is enqueued first and would otherwise fill the first batch, leaving its parent for the next.
+        requests.add(child);
+        requests.add(parent);
+
+        List<RequestBatch> batches = RequestCoalescer.createBatches(requests);
+
+        assertEquals(2, batches.size());
+        assertEquals(Request.MAXIMUM_BATCH_SIZE - 1, batches.get(0).size());
+        assertEquals(Arrays.asList(parent, child), batches.get(1).getRequests());
+    }
+
+    @SmallTest
+    public void testDependencyChainIsOrderedParentFirst() {
+        Request grandchild = new Request(null, "grandchild");
+        grandchild.setBatchEntryDependsOn("child");
+        Request child = new Request(null, "child");
+        child.setBatchEntryName("child");
+        child.setBatchEntryDependsOn("parent");
+        Request unrelated = new Request(null, "unrelated");
+        Request parent = new Request(null, "parent");
+        parent.setBatchEntryName("parent");
+
+        List<RequestBatch> batches = RequestCoalescer.createBatches(
+                Arrays.asList(grandchild, child, unrelated, parent));
+
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList(parent, child, grandchild, unrelated), batches.get(0).getRequests());
+    }
+
+    @SmallTest
+    public void testDuplicateEntryNamesAreSplitAcrossBatches() {
+        Request first = new Request(null, "me");
+        first.setBatchEntryName("name");
+        Request second = new Request(null, "me/friends");
+        second.setBatchEntryName("name");
+
+        List<RequestBatch> batches = RequestCoalescer.createBatches(Arrays.asList(first, second));
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList(first), batches.get(0).getRequests());
+        assertEquals(Arrays.asList(second), batches.get(1).getRequests());
+    }
+}
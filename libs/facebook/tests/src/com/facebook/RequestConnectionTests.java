@@ -0,0 +1,191 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs requests against a local HTTP server, which can see what the platform's keep-alive pool does with the
+// connections that Request opens.
+public final class RequestConnectionTests extends AndroidTestCase {
+    private static final String SUCCESS_BODY = "{\"id\":\"4\"}";
+    private static final String ERROR_BODY =
+            "{\"error\":{\"message\":\"Invalid token\",\"type\":\"OAuthException\",\"code\":190}}";
+
+    private StubServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new StubServer();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    @MediumTest
+    public void testSecondRequestReusesConnection() throws Exception {
+        server.setResponse(200, SUCCESS_BODY);
+
+        assertNull(execute().getError());
+        assertNull(execute().getError());
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @MediumTest
+    public void testErrorResponseDisconnects() throws Exception {
+        server.setResponse(400, ERROR_BODY);
+        assertNotNull(execute().getError());
+        server.waitForClosedConnections(1);
+
+        server.setResponse(200, SUCCESS_BODY);
+        assertNull(execute().getError());
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    private Response execute() throws Exception {
+        Request request = new Request(null, new URL("http://127.0.0.1:" + server.getPort() + "/4"));
+        List<Response> responses = Request.executeBatchAndWait(request);
+        assertEquals(1, responses.size());
+        return responses.get(0);
+    }
+
+    // Answers every request with the current response, and keeps each connection open until the client closes it.
+    private static final class StubServer extends Thread {
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        private final AtomicInteger requestCount = new AtomicInteger();
+        // Guarded by this.
+        private int closedConnectionCount;
+        private volatile int responseCode;
+        private volatile String responseBody;
+
+        StubServer() throws IOException {
+            serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        int getRequestCount() {
+            return requestCount.get();
+        }
+
+        void setResponse(int code, String body) {
+            responseCode = code;
+            responseBody = body;
+        }
+
+        synchronized void waitForClosedConnections(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (closedConnectionCount < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, closedConnectionCount);
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    connectionCount.incrementAndGet();
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    }.start();
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                OutputStream output = socket.getOutputStream();
+                while (readRequestHeaders(reader)) {
+                    requestCount.incrementAndGet();
+                    byte[] body = responseBody.getBytes("UTF-8");
+                    String headers = "HTTP/1.1 " + responseCode + " Stub\r\n" +
+                            "Content-Type: text/javascript; charset=UTF-8\r\n" +
+                            "Content-Length: " + body.length + "\r\n" +
+                            "\r\n";
+                    output.write(headers.getBytes("UTF-8"));
+                    output.write(body);
+                    output.flush();
+                }
+            } catch (IOException e) {
+                // Treated as the client closing the connection.
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+                synchronized (this) {
+                    closedConnectionCount++;
+                    notifyAll();
+                }
+            }
+        }
+
+        // Reads the headers of a GET request, which has no body.  Returns false if the client closed the connection.
+        private static boolean readRequestHeaders(BufferedReader reader) throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            while (line != null && line.length() > 0) {
+                line = reader.readLine();
+            }
+            return line != null;
+        }
+    }
+}
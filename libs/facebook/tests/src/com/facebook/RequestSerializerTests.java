@@ -0,0 +1,293 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+public final class RequestSerializerTests extends AndroidTestCase {
+    private static final String TAG = RequestSerializerTests.class.getSimpleName();
+
+    private static final int BATCH_SIZE = 50;
+
+    private static final String[] VALUES = new String[] {
+            "",
+            "plain ascii",
+            "caf\u00e9 \u00fcber \u00df",
+            "\u65e5\u672c\u8a9e \u20ac",
+            "emoji \ud83d\ude00 pair",
+            "unpaired \ud83d high and \ude00 low",
+            "trailing high \ud83d",
+    };
+
+    @SmallTest
+    public void testWriteStringMatchesFormattedOutput() throws IOException {
+        for (String value : VALUES) {
+            assertTrue(value, Arrays.equals(writeFormatted("message", value), writeWithSerializer("message", value)));
+        }
+    }
+
+    @SmallTest
+    public void testWriteStringLongerThanEncodeBuffer() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 3 * 8192) {
+            builder.append("\u00e9\u65e5\ud83d\ude00a");
+        }
+        String value = builder.toString();
+
+        assertTrue(Arrays.equals(writeFormatted("message", value), writeWithSerializer("message", value)));
+    }
+
+    @SmallTest
+    public void testWritesBoundaryOnlyOnce() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedOutputStream outputStream = new BufferedOutputStream(bytes);
+        Request.Serializer serializer = new Request.Serializer(outputStream, null);
+        serializer.writeString("a", "1");
+        serializer.writeString("b", "2");
+        outputStream.flush();
+
+        String expected = "--" + Request.MIME_BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n1\r\n" +
+                "--" + Request.MIME_BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"b\"\r\n\r\n2\r\n" +
+                "--" + Request.MIME_BOUNDARY + "\r\n";
+        assertEquals(expected, bytes.toString("UTF-8"));
+    }
+
+    // Compares writing parameters with the serializer against the String.format(...).getBytes() it replaced. Not an
+    // assertion, since timings vary between devices; the results are logged.
+    @LargeTest
+    public void testBenchmarkWriteString() throws IOException {
+        final int iterations = 20000;
+        NullOutputStream sink = new NullOutputStream();
+
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String value : VALUES) {
+                    writeFormatted(sink, "message", value);
+                }
+            }
+            long formattedNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BufferedOutputStream outputStream = new BufferedOutputStream(sink);
+            Request.Serializer serializer = new Request.Serializer(outputStream, null);
+            for (int i = 0; i < iterations; i++) {
+                for (String value : VALUES) {
+                    serializer.writeString("message", value);
+                }
+            }
+            outputStream.flush();
+            long serializerNanos = System.nanoTime() - start;
+
+            // The first pass only warms up.
+            if (pass > 0) {
+                int writes = iterations * VALUES.length;
+                Log.i(TAG, String.format("writeString: String.format %d ns, Serializer %d ns per parameter",
+                        formattedNanos / writes, serializerNanos / writes));
+            }
+        }
+    }
+
+    @MediumTest
+    public void testSerializeBatchMatchesBaseline() throws IOException, JSONException {
+        RequestBatch batch = createBatch();
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        Request.serializeToUrlConnection(batch, new StubConnection(serialized));
+        ByteArrayOutputStream baseline = new ByteArrayOutputStream();
+        serializeWithBaseline(batch, baseline);
+
+        assertTrue(Arrays.equals(baseline.toByteArray(), serialized.toByteArray()));
+    }
+
+    // Times a whole 50-request batch going through Request.serializeToUrlConnection against the same body written
+    // by the serializer it replaced. Both include building the batch JSON. Not an assertion, since timings vary
+    // between devices; the results are logged.
+    @LargeTest
+    public void testBenchmarkSerializeBatch() throws IOException, JSONException {
+        final int iterations = 200;
+        RequestBatch batch = createBatch();
+        NullOutputStream sink = new NullOutputStream();
+
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                serializeWithBaseline(batch, sink);
+            }
+            long baselineNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Request.serializeToUrlConnection(batch, new StubConnection(sink));
+            }
+            long serializerNanos = System.nanoTime() - start;
+
+            // The first pass only warms up.
+            if (pass > 0) {
+                Log.i(TAG, String.format("%d-request batch: String.format %d us, Serializer %d us per batch",
+                        BATCH_SIZE, baselineNanos / iterations / 1000, serializerNanos / iterations / 1000));
+            }
+        }
+    }
+
+    private static RequestBatch createBatch() {
+        RequestBatch batch = new RequestBatch();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Bundle parameters = new Bundle();
+            parameters.putString("message", VALUES[i % VALUES.length] + " " + i);
+            parameters.putString("link", "https://developers.facebook.com/docs/reference/api/batch/?item=" + i);
+            parameters.putInt("position", i);
+            batch.add(new Request(null, "me/feed", parameters, HttpMethod.POST));
+        }
+        // There is no session, so the batch needs an app ID of its own.
+        batch.setBatchApplicationId("1234567890");
+        return batch;
+    }
+
+    // What serializeToUrlConnection wrote for a batch before the byte templates were introduced: the app ID and the
+    // batch JSON, each written through String.format(...).getBytes().
+    private static void serializeWithBaseline(RequestBatch requests, OutputStream stream)
+            throws IOException, JSONException {
+        JSONArray batch = new JSONArray();
+        Bundle attachments = new Bundle();
+        for (Request request : requests) {
+            request.serializeToBatch(batch, attachments);
+        }
+
+        BufferedOutputStream outputStream = new BufferedOutputStream(stream);
+        try {
+            BaselineSerializer serializer = new BaselineSerializer(outputStream);
+            serializer.writeString("batch_app_id", requests.getBatchApplicationId());
+            serializer.writeString("batch", batch.toString());
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static byte[] writeWithSerializer(String key, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedOutputStream outputStream = new BufferedOutputStream(bytes);
+        new Request.Serializer(outputStream, null).writeString(key, value);
+        outputStream.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] writeFormatted(String key, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeFormatted(bytes, key, value);
+        return bytes.toByteArray();
+    }
+
+    // What Serializer.writeString wrote for the first parameter before the byte templates were introduced.
+    private static void writeFormatted(OutputStream stream, String key, String value) throws IOException {
+        stream.write(String.format("--%s\r\n", Request.MIME_BOUNDARY).getBytes("UTF-8"));
+        stream.write(String.format("Content-Disposition: form-data; name=\"%s\"", key).getBytes("UTF-8"));
+        stream.write("\r\n".getBytes("UTF-8"));
+        stream.write("\r\n".getBytes("UTF-8"));
+        stream.write(String.format("%s", value).getBytes("UTF-8"));
+        stream.write("\r\n".getBytes("UTF-8"));
+        stream.write(String.format("--%s\r\n", Request.MIME_BOUNDARY).getBytes("UTF-8"));
+    }
+
+    // Request.Serializer's string handling before the byte templates were introduced.
+    private static final class BaselineSerializer {
+        private final OutputStream outputStream;
+        private boolean firstWrite = true;
+
+        BaselineSerializer(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        void writeString(String key, String value) throws IOException {
+            write("Content-Disposition: form-data; name=\"%s\"", key);
+            writeLine("");
+            writeLine("");
+            writeLine("%s", value);
+            writeLine("--%s", Request.MIME_BOUNDARY);
+        }
+
+        private void write(String format, Object... args) throws IOException {
+            if (firstWrite) {
+                outputStream.write("--".getBytes());
+                outputStream.write(Request.MIME_BOUNDARY.getBytes());
+                outputStream.write("\r\n".getBytes());
+                firstWrite = false;
+            }
+            outputStream.write(String.format(format, args).getBytes());
+        }
+
+        private void writeLine(String format, Object... args) throws IOException {
+            write(format, args);
+            write("\r\n");
+        }
+    }
+
+    // Hands the request body to the given stream instead of a socket.
+    private static final class StubConnection extends HttpURLConnection {
+        private final OutputStream outputStream;
+
+        StubConnection(OutputStream outputStream) throws IOException {
+            super(new URL("https://graph.facebook.com/"));
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int oneByte) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) {
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import java.util.concurrent.Executor;
+
+// WorkQueue as it was before it was split into per-lane locks: the same lanes and aging, all under one lock.  Kept
+// so that WorkQueueTests.testBenchmarkContention can run the same workload against both.
+final class BaselineWorkQueue {
+    private static final int PRIORITY_VISIBLE = WorkQueue.PRIORITY_VISIBLE;
+    private static final int PRIORITY_COUNT = 3;
+    private static final int MAX_SKIPS = 4;
+
+    private final Object workLock = new Object();
+    private final WorkNode[] pendingJobs = new WorkNode[PRIORITY_COUNT];
+    private final int[] skipCounts = new int[PRIORITY_COUNT];
+
+    private final int maxConcurrent;
+    private final Executor executor;
+
+    private WorkNode runningJobs = null;
+    private int runningCount = 0;
+
+    BaselineWorkQueue(int maxConcurrent, Executor executor) {
+        this.maxConcurrent = maxConcurrent;
+        this.executor = executor;
+    }
+
+    WorkQueue.WorkItem addActiveWorkItem(Runnable callback, int priority, boolean addToFront) {
+        validatePriority(priority);
+        WorkNode node = new WorkNode(callback, priority);
+        synchronized (workLock) {
+            pendingJobs[priority] = node.addToList(pendingJobs[priority], addToFront);
+        }
+
+        startItem();
+        return node;
+    }
+
+    private void startItem() {
+        finishItemAndStartNew(null);
+    }
+
+    private void finishItemAndStartNew(WorkNode finished) {
+        WorkNode ready = null;
+
+        synchronized (workLock) {
+            if (finished != null) {
+                runningJobs = finished.removeFromList(runningJobs);
+                runningCount--;
+            }
+
+            if (runningCount < maxConcurrent) {
+                int lane = selectLane();
+                ready = (lane != -1) ? pendingJobs[lane] : null; // Head of the selected lane
+                if (ready != null) {
+                    // The Queue reassignments are necessary since 'ready' might have been
+                    // added / removed from the front of either queue, which changes its
+                    // respective head.
+                    pendingJobs[lane] = ready.removeFromList(pendingJobs[lane]);
+                    runningJobs = ready.addToList(runningJobs, false);
+                    runningCount++;
+
+                    ready.setIsRunning(true);
+                }
+            }
+        }
+
+        if (ready != null) {
+            execute(ready);
+        }
+    }
+
+    // Returns the lane to start the next job from, or -1 if there is no pending work.  Must be called with
+    // workLock held.
+    private int selectLane() {
+        int selected = -1;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (pendingJobs[i] == null) {
+                continue;
+            }
+            if (selected == -1) {
+                selected = i;
+            } else if (skipCounts[i] >= MAX_SKIPS) {
+                selected = i;
+                break;
+            }
+        }
+
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (i == selected || pendingJobs[i] == null) {
+                skipCounts[i] = 0;
+            } else {
+                skipCounts[i]++;
+            }
+        }
+        return selected;
+    }
+
+    private static void validatePriority(int priority) {
+        if (priority < 0 || priority >= PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Invalid priority " + priority);
+        }
+    }
+
+    private void execute(final WorkNode node) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    node.getCallback().run();
+                } finally {
+                    finishItemAndStartNew(node);
+                }
+            }
+        });
+    }
+
+    private class WorkNode implements WorkQueue.WorkItem {
+        private final Runnable callback;
+        private WorkNode next;
+        private WorkNode prev;
+        private boolean isRunning;
+        private int priority;
+
+        WorkNode(Runnable callback, int priority) {
+            this.callback = callback;
+            this.priority = priority;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (workLock) {
+                if (!isRunning()) {
+                    pendingJobs[priority] = removeFromList(pendingJobs[priority]);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void moveToFront() {
+            synchronized (workLock) {
+                if (!isRunning()) {
+                    pendingJobs[priority] = removeFromList(pendingJobs[priority]);
+                    priority = PRIORITY_VISIBLE;
+                    pendingJobs[priority] = addToList(pendingJobs[priority], true);
+                }
+            }
+        }
+
+        @Override
+        public void setPriority(int newPriority) {
+            validatePriority(newPriority);
+            synchronized (workLock) {
+                if (!isRunning() && newPriority != priority) {
+                    pendingJobs[priority] = removeFromList(pendingJobs[priority]);
+                    priority = newPriority;
+                    pendingJobs[priority] = addToList(pendingJobs[priority], false);
+                }
+            }
+        }
+
+        @Override
+        public int getPriority() {
+            synchronized (workLock) {
+                return priority;
+            }
+        }
+
+        @Override
+        public boolean isRunning() {
+            return isRunning;
+        }
+
+        Runnable getCallback() {
+            return callback;
+        }
+
+        void setIsRunning(boolean isRunning) {
+            this.isRunning = isRunning;
+        }
+
+        WorkNode addToList(WorkNode list, boolean addToFront) {
+            assert next == null;
+            assert prev == null;
+
+            if (list == null) {
+                list = next = prev = this;
+            } else {
+                next = list;
+                prev = list.prev;
+                next.prev = prev.next = this;
+            }
+
+            return addToFront ? this : list;
+        }
+
+        WorkNode removeFromList(WorkNode list) {
+            assert next != null;
+            assert prev != null;
+
+            if (list == this) {
+                if (next == this) {
+                    list = null;
+                } else {
+                    list = next;
+                }
+            }
+
+            next.prev = prev;
+            prev.next = next;
+            next = prev = null;
+
+            return list;
+        }
+    }
+}
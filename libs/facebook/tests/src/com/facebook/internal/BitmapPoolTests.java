@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+public final class BitmapPoolTests extends AndroidTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BitmapPool.setMaxSizeInBytes(Integer.MAX_VALUE);
+        BitmapPool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @SmallTest
+    public void testPooledOnceEveryReferenceIsReleased() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+
+        BitmapPool.retain(bitmap);
+        BitmapPool.retain(bitmap);
+        BitmapPool.release(bitmap);
+        assertEquals(0, BitmapPool.getSizeInBytes());
+
+        BitmapPool.release(bitmap);
+        assertEquals(ImageMemoryCache.getByteCount(bitmap), BitmapPool.getSizeInBytes());
+        assertSame(bitmap, BitmapPool.get(16, 16, 1));
+    }
+
+    @SmallTest
+    public void testNotPooledWhileCallerThatNeverReleasesHoldsIt() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+
+        // One response goes to a caller that doesn't know about the pool, the other to a view that releases it.
+        BitmapPool.retain(bitmap);
+        BitmapPool.retain(bitmap);
+        BitmapPool.release(bitmap);
+
+        assertEquals(0, BitmapPool.getSizeInBytes());
+        assertNull(BitmapPool.get(16, 16, 1));
+    }
+
+    @SmallTest
+    public void testBitmapNeverHandedOutIsNotPooled() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+
+        BitmapPool.release(bitmap);
+
+        assertEquals(0, BitmapPool.getSizeInBytes());
+    }
+}
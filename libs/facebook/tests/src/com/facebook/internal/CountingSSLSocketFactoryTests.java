@@ -0,0 +1,162 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.cert.Certificate;
+
+public final class CountingSSLSocketFactoryTests extends AndroidTestCase {
+    @SmallTest
+    public void testCountsHandshakesAndReuse() throws Exception {
+        CountingSSLSocketFactory factory = new CountingSSLSocketFactory(new StubSSLSocketFactory());
+
+        // The first connection has nothing to reuse, so the platform asks the factory for a socket.
+        HttpsURLConnection first = new StubHttpsURLConnection();
+        factory.startTracking(first);
+        assertSame(factory, first.getSSLSocketFactory());
+        factory.createSocket("graph.facebook.com", 443);
+        factory.finishTracking(first);
+
+        // The second is served from the keep-alive pool.
+        HttpsURLConnection second = new StubHttpsURLConnection();
+        factory.startTracking(second);
+        factory.finishTracking(second);
+
+        assertEquals(1, factory.getHandshakeCount());
+        assertEquals(2, factory.getResponseCount());
+        assertEquals(1, factory.getReuseCount());
+    }
+
+    @SmallTest
+    public void testResponseIsRecordedOnce() throws Exception {
+        CountingSSLSocketFactory factory = new CountingSSLSocketFactory(new StubSSLSocketFactory());
+        HttpsURLConnection connection = new StubHttpsURLConnection();
+
+        factory.startTracking(connection);
+        factory.finishTracking(connection);
+        factory.finishTracking(connection);
+
+        assertEquals(1, factory.getResponseCount());
+        assertEquals(1, factory.getReuseCount());
+    }
+
+    @SmallTest
+    public void testHandshakeOnAnotherThreadIsNotReuse() throws Exception {
+        final CountingSSLSocketFactory factory = new CountingSSLSocketFactory(new StubSSLSocketFactory());
+        final HttpsURLConnection connection = new StubHttpsURLConnection();
+
+        // Read on a different thread from the one that created the connection, so it can't be attributed.
+        factory.startTracking(connection);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    factory.createSocket("graph.facebook.com", 443);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                factory.finishTracking(connection);
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals(1, factory.getHandshakeCount());
+        assertEquals(0, factory.getResponseCount());
+        assertEquals(0, factory.getReuseCount());
+    }
+
+    private static final class StubHttpsURLConnection extends HttpsURLConnection {
+        StubHttpsURLConnection() throws Exception {
+            super(new URL("https://graph.facebook.com/me"));
+        }
+
+        @Override
+        public String getCipherSuite() {
+            return null;
+        }
+
+        @Override
+        public Certificate[] getLocalCertificates() {
+            return null;
+        }
+
+        @Override
+        public Certificate[] getServerCertificates() {
+            return null;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+    }
+
+    // Hands out unconnected sockets; only the calls are of interest.
+    private static final class StubSSLSocketFactory extends SSLSocketFactory {
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return new String[0];
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return new String[0];
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) {
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) {
+            return new Socket();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class FileLruCacheTests extends AndroidTestCase {
+    private static final String TAG = FileLruCacheTests.class.getSimpleName();
+    private static final AtomicInteger cacheIndex = new AtomicInteger();
+    private final Random random = new Random();
+
+    @MediumTest
+    public void testPutAndGet() throws Exception {
+        FileLruCache cache = createCache(new FileLruCache.Limits());
+        byte[] data = generateBytes(1024);
+
+        put(cache, "key", null, data);
+
+        assertTrue(Arrays.equals(data, get(cache, "key", null)));
+        assertNull(get(cache, "other key", null));
+        cache.clearCache();
+    }
+
+    @MediumTest
+    public void testContentTagMustMatch() throws Exception {
+        FileLruCache cache = createCache(new FileLruCache.Limits());
+        byte[] data = generateBytes(1024);
+
+        put(cache, "key", "tag", data);
+
+        assertTrue(Arrays.equals(data, get(cache, "key", "tag")));
+        assertNull(get(cache, "key", "other tag"));
+        assertNull(get(cache, "key", null));
+        cache.clearCache();
+    }
+
+    @MediumTest
+    public void testGetMappedSkipsHeader() throws Exception {
+        FileLruCache cache = createCache(new FileLruCache.Limits());
+        byte[] data = generateBytes(1024);
+        put(cache, "key", null, data);
+
+        java.nio.ByteBuffer mapped = cache.getMapped("key");
+        byte[] mappedData = new byte[mapped.remaining()];
+        mapped.get(mappedData);
+
+        assertTrue(Arrays.equals(data, mappedData));
+        cache.clearCache();
+    }
+
+    @MediumTest
+    public void testByteLimitAppliesToWholeShardedCache() throws Exception {
+        FileLruCache.Limits limits = new FileLruCache.Limits();
+        limits.setByteCount(10000);
+        limits.setShardCount(4);
+        FileLruCache cache = createCache(limits);
+
+        for (int i = 0; i < 40; i++) {
+            put(cache, "key" + i, null, generateBytes(1000));
+        }
+
+        long size = cache.sizeInBytesForTest();
+        assertTrue("size " + size, size <= 10000);
+        // Roughly the whole quota is used, not whatever the busiest shard's share happens to be.
+        assertTrue("size " + size, size > 10000 - 2 * 1100);
+        cache.clearCache();
+    }
+
+    @MediumTest
+    public void testEntryLargerThanShardShareIsKept() throws Exception {
+        FileLruCache.Limits limits = new FileLruCache.Limits();
+        limits.setByteCount(10000);
+        limits.setShardCount(4);
+        FileLruCache cache = createCache(limits);
+        byte[] data = generateBytes(6000);
+
+        put(cache, "key", null, data);
+        cache.sizeInBytesForTest(); // waits for the trim
+
+        assertTrue(Arrays.equals(data, get(cache, "key", null)));
+        cache.clearCache();
+    }
+
+    @MediumTest
+    public void testTrimEvictsLeastRecentlyUsedAcrossShards() throws Exception {
+        FileLruCache.Limits limits = new FileLruCache.Limits();
+        limits.setFileCount(4);
+        limits.setShardCount(4);
+        FileLruCache cache = createCache(limits);
+
+        for (int i = 0; i < 4; i++) {
+            put(cache, "key" + i, null, generateBytes(100));
+            cache.sizeInBytesForTest();
+            // Access times have millisecond resolution.
+            Thread.sleep(5);
+        }
+        assertNotNull(get(cache, "key0", null));
+        Thread.sleep(5);
+        put(cache, "key4", null, generateBytes(100));
+        cache.sizeInBytesForTest();
+
+        assertNull(get(cache, "key1", null));
+        assertNotNull(get(cache, "key0", null));
+        assertNotNull(get(cache, "key2", null));
+        assertNotNull(get(cache, "key3", null));
+        assertNotNull(get(cache, "key4", null));
+        cache.clearCache();
+    }
+
+    // Files written before the binary header was introduced start with a JSON header, and must still be readable.
+    @MediumTest
+    public void testReadsJsonHeader() throws Exception {
+        String tag = createTag();
+        byte[] data = generateBytes(1024);
+        writeJsonHeaderFile(tag, "key", "content tag", data);
+        FileLruCache cache = new FileLruCache(getContext(), tag, new FileLruCache.Limits());
+
+        assertTrue(Arrays.equals(data, get(cache, "key", "content tag")));
+        assertNull(get(cache, "key", "other tag"));
+        assertNull(get(cache, "other key", "content tag"));
+        cache.clearCache();
+    }
+
+    @MediumTest
+    public void testJsonHeaderIsMigratedOnFirstHit() throws Exception {
+        String tag = createTag();
+        byte[] data = generateBytes(1024);
+        File file = writeJsonHeaderFile(tag, "key", "content tag", data);
+        FileLruCache cache = new FileLruCache(getContext(), tag, new FileLruCache.Limits());
+        assertEquals(0, readFirstByte(file));
+
+        assertTrue(Arrays.equals(data, get(cache, "key", "content tag")));
+
+        // The file is rewritten in the background.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (readFirstByte(file) != FileLruCache.StreamHeader.HEADER_VERSION
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(FileLruCache.StreamHeader.HEADER_VERSION, readFirstByte(file));
+        assertTrue(Arrays.equals(data, get(cache, "key", "content tag")));
+        assertNull(get(cache, "key", null));
+        cache.clearCache();
+    }
+
+    // Compares parsing a version 0 (JSON) header with the current binary one.  Not an assertion; the results
+    // are logged.
+    @LargeTest
+    public void testBenchmarkReadHeader() throws Exception {
+        final int iterations = 20000;
+        String key = "https://fbcdn-profile-a.akamaihd.net/hprofile-ak-ash2/1_q.jpg";
+        String contentTag = "https://fbcdn-profile-a.akamaihd.net/hprofile-ak-ash2/1_q.jpg?v=2";
+        byte[][] headers = new byte[][] {
+                encodeJsonHeader(key, contentTag), FileLruCache.StreamHeader.encodeHeader(key, contentTag) };
+
+        for (int pass = 0; pass < 2; pass++) {
+            long[] elapsed = new long[headers.length];
+            for (int version = 0; version < headers.length; version++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    FileLruCache.StreamHeader.Header header =
+                            FileLruCache.StreamHeader.readHeader(new ByteArrayInputStream(headers[version]));
+                    assertEquals(key, header.key);
+                }
+                elapsed[version] = System.nanoTime() - start;
+            }
+
+            // The first pass only warms up.
+            if (pass > 0) {
+                Log.i(TAG, String.format("readHeader: %d ns per version 0 header, %d ns per version 1 header",
+                        elapsed[0] / iterations, elapsed[1] / iterations));
+            }
+        }
+    }
+
+    // Times cache hits, which are dominated by opening the file and reading its header. Not an assertion, since
+    // timings vary between devices; the results are logged.
+    @LargeTest
+    public void testBenchmarkGet() throws Exception {
+        final int keyCount = 100;
+        final int iterations = 20;
+        FileLruCache cache = createCache(new FileLruCache.Limits());
+        for (int i = 0; i < keyCount; i++) {
+            put(cache, "https://fbcdn-profile-a.akamaihd.net/hprofile-ak-ash2/" + i + "_q.jpg", null,
+                    generateBytes(2048));
+        }
+
+        byte[] buffer = new byte[16];
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                for (int i = 0; i < keyCount; i++) {
+                    InputStream stream = cache.get("https://fbcdn-profile-a.akamaihd.net/hprofile-ak-ash2/" + i
+                            + "_q.jpg");
+                    stream.read(buffer);
+                    stream.close();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            // The first pass only warms up.
+            if (pass > 0) {
+                Log.i(TAG, String.format("get: %d ns per hit", elapsed / (iterations * keyCount)));
+            }
+        }
+        cache.clearCache();
+    }
+
+    // Compares hit throughput with one and four shards while several threads read at once. Not an assertion;
+    // the results are logged.
+    @LargeTest
+    public void testBenchmarkConcurrentGet() throws Exception {
+        final int keyCount = 256;
+        final int threadCount = 4;
+        final int hitsPerThread = 5000;
+
+        for (int shardCount : new int[] { 1, 4 }) {
+            FileLruCache.Limits limits = new FileLruCache.Limits();
+            limits.setShardCount(shardCount);
+            final FileLruCache cache = createCache(limits);
+            for (int i = 0; i < keyCount; i++) {
+                put(cache, "key" + i, null, generateBytes(1024));
+            }
+
+            for (int pass = 0; pass < 2; pass++) {
+                Thread[] threads = new Thread[threadCount];
+                final AtomicInteger failures = new AtomicInteger();
+                for (int t = 0; t < threadCount; t++) {
+                    final int seed = t;
+                    threads[t] = new Thread() {
+                        @Override
+                        public void run() {
+                            Random threadRandom = new Random(seed);
+                            try {
+                                for (int i = 0; i < hitsPerThread; i++) {
+                                    InputStream stream = cache.get("key" + threadRandom.nextInt(keyCount));
+                                    if (stream == null) {
+                                        failures.incrementAndGet();
+                                    } else {
+                                        stream.close();
+                                    }
+                                }
+                            } catch (IOException e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    };
+                }
+
+                long start = System.nanoTime();
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long elapsed = System.nanoTime() - start;
+                assertEquals(0, failures.get());
+
+                // The first pass only warms up.
+                if (pass > 0) {
+                    Log.i(TAG, String.format("get with %d shards and %d threads: %d ns per hit", shardCount,
+                            threadCount, elapsed / (threadCount * hitsPerThread)));
+                }
+            }
+            cache.clearCache();
+        }
+    }
+
+    private FileLruCache createCache(FileLruCache.Limits limits) {
+        return new FileLruCache(getContext(), createTag(), limits);
+    }
+
+    private static String createTag() {
+        return TAG + cacheIndex.incrementAndGet();
+    }
+
+    // Writes a cache file the way versions before the binary header did, into an unsharded cache.
+    private File writeJsonHeaderFile(String tag, String key, String contentTag, byte[] data) throws Exception {
+        File directory = new File(getContext().getCacheDir(), tag);
+        directory.mkdirs();
+        File file = new File(directory, Utility.md5hash(key));
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(encodeJsonHeader(key, contentTag));
+            output.write(data);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static byte[] encodeJsonHeader(String key, String contentTag) throws Exception {
+        JSONObject header = new JSONObject();
+        header.put("key", key);
+        if (contentTag != null) {
+            header.put("tag", contentTag);
+        }
+        byte[] headerBytes = header.toString().getBytes("UTF-8");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(0);
+        bytes.write(headerBytes.length >> 16);
+        bytes.write(headerBytes.length >> 8);
+        bytes.write(headerBytes.length);
+        bytes.write(headerBytes);
+        return bytes.toByteArray();
+    }
+
+    private static int readFirstByte(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return input.read();
+        } finally {
+            input.close();
+        }
+    }
+
+    private byte[] generateBytes(int count) {
+        byte[] bytes = new byte[count];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void put(FileLruCache cache, String key, String contentTag, byte[] data) throws IOException {
+        OutputStream stream = cache.openPutStream(key, contentTag);
+        try {
+            stream.write(data);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static byte[] get(FileLruCache cache, String key, String contentTag) throws IOException {
+        InputStream stream = cache.get(key, contentTag);
+        if (stream == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+}
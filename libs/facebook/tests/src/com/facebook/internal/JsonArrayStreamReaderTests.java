@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class JsonArrayStreamReaderTests extends AndroidTestCase {
+    @SmallTest
+    public void testReadsElements() throws Exception {
+        JsonArrayStreamReader reader = new JsonArrayStreamReader(stream("[1, {\"a\":[2,\"]\"]}, \"x,y\"]"));
+
+        assertTrue(reader.beginArray());
+        assertEquals("1", reader.nextElement().trim());
+        assertEquals("{\"a\":[2,\"]\"]}", reader.nextElement().trim());
+        assertEquals("\"x,y\"", reader.nextElement().trim());
+        assertNull(reader.nextElement());
+    }
+
+    @SmallTest
+    public void testSkipRemainingReadsToEndAfterArray() throws Exception {
+        String trailing = "  \r\n\t";
+        TrackingInputStream stream = new TrackingInputStream(stream("[{\"code\":200}]" + trailing));
+        JsonArrayStreamReader reader = new JsonArrayStreamReader(stream);
+
+        assertTrue(reader.beginArray());
+        assertNotNull(reader.nextElement());
+        assertNull(reader.nextElement());
+
+        assertEquals(trailing.length(), reader.skipRemaining());
+        assertTrue(stream.reachedEnd);
+        assertEquals(0, stream.available());
+    }
+
+    @SmallTest
+    public void testSkipRemainingDiscardsNonWhitespaceAfterArray() throws Exception {
+        // Larger than the reader's buffer, so some of it is still in the stream when the array ends.
+        StringBuilder trailing = new StringBuilder("garbage");
+        while (trailing.length() <= 4 * Utility.DEFAULT_STREAM_BUFFER_SIZE) {
+            trailing.append(" more garbage");
+        }
+        TrackingInputStream stream = new TrackingInputStream(stream("[1,2]" + trailing));
+        JsonArrayStreamReader reader = new JsonArrayStreamReader(stream);
+
+        assertTrue(reader.beginArray());
+        assertEquals("1", reader.nextElement());
+        assertEquals("2", reader.nextElement());
+        assertNull(reader.nextElement());
+
+        assertEquals(trailing.length(), reader.skipRemaining());
+        assertTrue(stream.reachedEnd);
+        assertEquals("[1,2]".length() + trailing.length(), reader.getCharactersRead());
+    }
+
+    private static InputStream stream(String string) throws IOException {
+        return new ByteArrayInputStream(string.getBytes("UTF-8"));
+    }
+
+    private static final class TrackingInputStream extends InputStream {
+        private final InputStream stream;
+        boolean reachedEnd;
+
+        TrackingInputStream(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = stream.read();
+            reachedEnd |= (result == -1);
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = stream.read(buffer, offset, length);
+            reachedEnd |= (result == -1);
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return stream.available();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class UrlRedirectCacheTests extends AndroidTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        UrlRedirectCache.clearCache(getContext());
+    }
+
+    @MediumTest
+    public void testChainIsCollapsed() throws Exception {
+        URI a = new URI("http://example.com/a");
+        URI b = new URI("http://example.com/b");
+        URI c = new URI("http://example.com/c");
+        URI d = new URI("http://example.com/d");
+
+        UrlRedirectCache.cacheUriRedirect(getContext(), a, b);
+        UrlRedirectCache.cacheUriRedirect(getContext(), b, c);
+        UrlRedirectCache.cacheUriRedirect(getContext(), c, d);
+
+        assertEquals(d, UrlRedirectCache.getRedirectedUri(getContext(), a));
+        assertEquals(d, UrlRedirectCache.getRedirectedUri(getContext(), b));
+        assertEquals(d, UrlRedirectCache.getRedirectedUri(getContext(), c));
+        assertNull(UrlRedirectCache.getRedirectedUri(getContext(), d));
+    }
+
+    @MediumTest
+    public void testRedirectCanBeReplaced() throws Exception {
+        URI a = new URI("http://example.com/a");
+        URI b = new URI("http://example.com/b");
+        URI c = new URI("http://example.com/c");
+        URI d = new URI("http://example.com/d");
+
+        UrlRedirectCache.cacheUriRedirect(getContext(), a, b);
+        UrlRedirectCache.cacheUriRedirect(getContext(), a, c);
+        // a no longer points at b, so this must not re-point a.
+        UrlRedirectCache.cacheUriRedirect(getContext(), b, d);
+
+        assertEquals(c, UrlRedirectCache.getRedirectedUri(getContext(), a));
+        assertEquals(d, UrlRedirectCache.getRedirectedUri(getContext(), b));
+    }
+
+    @MediumTest
+    public void testLoadedRedirectMatchesCache() throws Exception {
+        URI a = new URI("http://example.com/a");
+        URI b = new URI("http://example.com/b");
+        URI c = new URI("http://example.com/c");
+
+        UrlRedirectCache.cacheUriRedirect(getContext(), a, b);
+        UrlRedirectCache.cacheUriRedirect(getContext(), b, c);
+
+        assertEquals(c, UrlRedirectCache.getLoadedRedirectedUri(a));
+        assertEquals(c, UrlRedirectCache.getLoadedRedirectedUri(b));
+        assertNull(UrlRedirectCache.getLoadedRedirectedUri(c));
+        assertNull(UrlRedirectCache.getLoadedRedirectedUri(null));
+
+        UrlRedirectCache.clearCache(getContext());
+        assertNull(UrlRedirectCache.getLoadedRedirectedUri(a));
+    }
+
+    @MediumTest
+    public void testJournalMatchesCache() throws Exception {
+        URI a = new URI("http://example.com/a");
+        URI b = new URI("http://example.com/b");
+        URI c = new URI("http://example.com/c");
+
+        UrlRedirectCache.cacheUriRedirect(getContext(), a, b);
+        UrlRedirectCache.cacheUriRedirect(getContext(), b, c);
+
+        Map<String, String> journal = readJournal();
+        assertEquals(2, journal.size());
+        assertEquals(c.toString(), journal.get(a.toString()));
+        assertEquals(c.toString(), journal.get(b.toString()));
+    }
+
+    @MediumTest
+    public void testLongUrlDoesNotDisableJournal() throws Exception {
+        StringBuilder path = new StringBuilder("http://example.com/");
+        for (int i = 0; i < 70000; i++) {
+            path.append('x');
+        }
+        URI longUri = new URI(path.toString());
+        URI a = new URI("http://example.com/a");
+        URI b = new URI("http://example.com/b");
+
+        UrlRedirectCache.cacheUriRedirect(getContext(), longUri, a);
+        UrlRedirectCache.cacheUriRedirect(getContext(), a, b);
+
+        // The long URL is still cached in memory, and records after it still reach the journal.
+        assertEquals(b, UrlRedirectCache.getRedirectedUri(getContext(), longUri));
+        Map<String, String> journal = readJournal();
+        assertEquals(1, journal.size());
+        assertEquals(b.toString(), journal.get(a.toString()));
+    }
+
+    private Map<String, String> readJournal() throws Exception {
+        File directory = new File(getContext().getApplicationContext().getCacheDir(), UrlRedirectCache.TAG);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, "journal"))));
+        Map<String, String> result = new HashMap<String, String>();
+        try {
+            while (true) {
+                String from = input.readUTF();
+                result.put(from, input.readUTF());
+            }
+        } catch (EOFException e) {
+            // End of the journal
+        } finally {
+            input.close();
+        }
+        return result;
+    }
+}
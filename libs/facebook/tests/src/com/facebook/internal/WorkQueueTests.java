@@ -0,0 +1,336 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class WorkQueueTests extends AndroidTestCase {
+    private static final String TAG = WorkQueueTests.class.getSimpleName();
+    private static final int PRIORITY_COUNT = 3;
+
+    @MediumTest
+    public void testRunsHigherPriorityFirst() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        WorkQueue queue = new WorkQueue(1, executor);
+        final List<String> order = new ArrayList<String>();
+
+        queue.addActiveWorkItem(new Recorder(order, "first"), WorkQueue.PRIORITY_BACKGROUND, false);
+        queue.addActiveWorkItem(new Recorder(order, "background"), WorkQueue.PRIORITY_BACKGROUND, false);
+        queue.addActiveWorkItem(new Recorder(order, "prefetch"), WorkQueue.PRIORITY_PREFETCH, false);
+        queue.addActiveWorkItem(new Recorder(order, "visible"), WorkQueue.PRIORITY_VISIBLE, false);
+        queue.validate();
+        executor.runAll();
+        queue.validate();
+
+        // The first item started as soon as it was added, while the queue was empty.
+        assertEquals(4, order.size());
+        assertEquals("first", order.get(0));
+        assertEquals("visible", order.get(1));
+        assertEquals("prefetch", order.get(2));
+        assertEquals("background", order.get(3));
+    }
+
+    @MediumTest
+    public void testCancelledItemDoesNotRun() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        WorkQueue queue = new WorkQueue(1, executor);
+        final List<String> order = new ArrayList<String>();
+
+        WorkQueue.WorkItem running = queue.addActiveWorkItem(new Recorder(order, "running"));
+        WorkQueue.WorkItem cancelled = queue.addActiveWorkItem(new Recorder(order, "cancelled"));
+        assertTrue(running.isRunning());
+        assertFalse(running.cancel());
+        assertTrue(cancelled.cancel());
+        queue.validate();
+        executor.runAll();
+
+        assertEquals(1, order.size());
+        assertEquals("running", order.get(0));
+    }
+
+    // Adds, cancels, re-prioritizes and finishes items from several threads at once while another thread keeps
+    // calling validate().  validate() only asserts when assertions are enabled, so the test also checks that every
+    // item that wasn't cancelled runs exactly once, that no cancelled item runs, and that no more than maxConcurrent
+    // items ever run at the same time.
+    @LargeTest
+    public void testConcurrentOperationsKeepQueueValid() throws Exception {
+        final int threadCount = 4;
+        final int itemsPerThread = 5000;
+        final int maxConcurrent = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent + 1);
+        final WorkQueue queue = new WorkQueue(maxConcurrent, executor);
+
+        final AtomicIntegerArray runCounts = new AtomicIntegerArray(threadCount * itemsPerThread);
+        final AtomicIntegerArray cancelled = new AtomicIntegerArray(threadCount * itemsPerThread);
+        final AtomicInteger runningNow = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean isDone = new AtomicBoolean();
+        final CountDownLatch mutatorsDone = new CountDownLatch(threadCount);
+
+        Thread validator = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!isDone.get()) {
+                        queue.validate();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        validator.start();
+
+        for (int t = 0; t < threadCount; t++) {
+            final int firstId = t * itemsPerThread;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(firstId);
+                        List<WorkQueue.WorkItem> items = new ArrayList<WorkQueue.WorkItem>();
+                        for (int i = 0; i < itemsPerThread; i++) {
+                            final int id = firstId + i;
+                            Runnable callback = new Runnable() {
+                                @Override
+                                public void run() {
+                                    int running = runningNow.incrementAndGet();
+                                    while (true) {
+                                        int max = maxRunning.get();
+                                        if (running <= max || maxRunning.compareAndSet(max, running)) {
+                                            break;
+                                        }
+                                    }
+                                    runCounts.incrementAndGet(id);
+                                    Thread.yield();
+                                    runningNow.decrementAndGet();
+                                }
+                            };
+                            items.add(queue.addActiveWorkItem(callback, random.nextInt(PRIORITY_COUNT),
+                                    random.nextBoolean()));
+
+                            int index = random.nextInt(items.size());
+                            WorkQueue.WorkItem item = items.get(index);
+                            switch (random.nextInt(4)) {
+                                case 0:
+                                    if (item.cancel()) {
+                                        cancelled.set(firstId + index, 1);
+                                    }
+                                    break;
+                                case 1:
+                                    item.setPriority(random.nextInt(PRIORITY_COUNT));
+                                    break;
+                                case 2:
+                                    item.moveToFront();
+                                    break;
+                                default:
+                                    item.isRunning();
+                                    break;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        mutatorsDone.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        try {
+            assertTrue(mutatorsDone.await(60, TimeUnit.SECONDS));
+            int expectedRunCount = 0;
+            for (int i = 0; i < runCounts.length(); i++) {
+                expectedRunCount += 1 - cancelled.get(i);
+            }
+            long deadline = System.currentTimeMillis() + 60000;
+            while (getTotal(runCounts) < expectedRunCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            isDone.set(true);
+            validator.join();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        queue.validate();
+        for (int i = 0; i < runCounts.length(); i++) {
+            assertEquals("item " + i, 1 - cancelled.get(i), runCounts.get(i));
+        }
+        assertTrue("max running " + maxRunning.get(), maxRunning.get() <= maxConcurrent);
+    }
+
+    // Runs the same workload through WorkQueue and through BaselineWorkQueue, the single-lock implementation it
+    // replaced, with 8, 32 and 128 threads submitting at once.  Not an assertion; the results are logged.  The
+    // difference only shows on a device with several cores.
+    @LargeTest
+    public void testBenchmarkContention() throws Exception {
+        final int itemCount = 64000;
+        int[] submitterCounts = new int[] { 8, 32, 128 };
+
+        // Warm up.
+        runContention(createSubmitter(false), 8, itemCount);
+        runContention(createSubmitter(true), 8, itemCount);
+
+        for (int submitterCount : submitterCounts) {
+            long baselineTime = runContention(createSubmitter(true), submitterCount, itemCount);
+            long time = runContention(createSubmitter(false), submitterCount, itemCount);
+            Log.i(TAG, String.format("%d submitters: %d ns per item with WorkQueue, %d ns with the baseline",
+                    submitterCount, time / itemCount, baselineTime / itemCount));
+        }
+    }
+
+    // Adds items to one queue or the other, so both can be given the same workload.
+    private interface Submitter {
+        WorkQueue.WorkItem add(Runnable callback, int priority);
+        void shutdown();
+    }
+
+    private static Submitter createSubmitter(boolean isBaseline) {
+        final ExecutorService executor = Executors.newFixedThreadPool(WorkQueue.DEFAULT_MAX_CONCURRENT);
+        if (isBaseline) {
+            final BaselineWorkQueue queue = new BaselineWorkQueue(WorkQueue.DEFAULT_MAX_CONCURRENT, executor);
+            return new Submitter() {
+                @Override
+                public WorkQueue.WorkItem add(Runnable callback, int priority) {
+                    return queue.addActiveWorkItem(callback, priority, false);
+                }
+
+                @Override
+                public void shutdown() {
+                    executor.shutdown();
+                }
+            };
+        } else {
+            final WorkQueue queue = new WorkQueue(WorkQueue.DEFAULT_MAX_CONCURRENT, executor);
+            return new Submitter() {
+                @Override
+                public WorkQueue.WorkItem add(Runnable callback, int priority) {
+                    return queue.addActiveWorkItem(callback, priority, false);
+                }
+
+                @Override
+                public void shutdown() {
+                    executor.shutdown();
+                }
+            };
+        }
+    }
+
+    // Splits itemCount items between submitterCount threads, which add them at random priorities and move every
+    // fourth one to the visible lane.  Returns the time until all of them have run.
+    private long runContention(final Submitter submitter, int submitterCount, int itemCount) throws Exception {
+        final int itemsPerSubmitter = itemCount / submitterCount;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(submitterCount * itemsPerSubmitter);
+        final Runnable callback = new Runnable() {
+            @Override
+            public void run() {
+                finished.countDown();
+            }
+        };
+
+        for (int t = 0; t < submitterCount; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < itemsPerSubmitter; i++) {
+                        WorkQueue.WorkItem item = submitter.add(callback, random.nextInt(PRIORITY_COUNT));
+                        if (i % 4 == 0) {
+                            item.setPriority(WorkQueue.PRIORITY_VISIBLE);
+                        }
+                    }
+                }
+            }.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        assertTrue(finished.await(120, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - startTime;
+        submitter.shutdown();
+        return elapsed;
+    }
+
+    private static int getTotal(AtomicIntegerArray counts) {
+        int total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    private static final class Recorder implements Runnable {
+        private final List<String> order;
+        private final String name;
+
+        Recorder(List<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+        }
+    }
+
+    // Runs work only when asked, on the calling thread, so tests can control the order things happen in.
+    private static final class ManualExecutor implements Executor {
+        private final List<Runnable> pending = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        void runAll() {
+            while (!pending.isEmpty()) {
+                pending.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.model;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+public final class GraphDateParserTests extends AndroidTestCase {
+    private static final String TAG = GraphDateParserTests.class.getSimpleName();
+    // How dates were parsed before GraphDateParser, tried in this order.
+    private static final String[] OLD_FORMATS = new String[] {
+            "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd" };
+
+    private TimeZone defaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        defaultTimeZone = TimeZone.getDefault();
+        // Anything but UTC, so that a timestamp read in the wrong time zone shows up.
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(defaultTimeZone);
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testOffsetForms() {
+        long expected = getUtcTime(2014, 3, 1, 19, 0, 0, 0);
+
+        assertEquals(expected, GraphDateParser.parse("2014-03-01T19:00:00+0000").getTime());
+        assertEquals(expected, GraphDateParser.parse("2014-03-01T19:00:00+00:00").getTime());
+        assertEquals(expected, GraphDateParser.parse("2014-03-01T19:00:00+00").getTime());
+        assertEquals(expected, GraphDateParser.parse("2014-03-01T11:00:00-0800").getTime());
+        assertEquals(expected, GraphDateParser.parse("2014-03-02T00:30:00+05:30").getTime());
+    }
+
+    // A change from the old SimpleDateFormat patterns, which couldn't parse a "Z" suffix and fell back to the pattern
+    // without an offset, reading the timestamp as local time.
+    @SmallTest
+    public void testZSuffixIsUtc() {
+        String value = "2014-03-01T19:00:00Z";
+        long expected = getUtcTime(2014, 3, 1, 19, 0, 0, 0);
+
+        assertEquals(expected, GraphDateParser.parse(value).getTime());
+        assertEquals(getLocalTime(2014, 3, 1, 19, 0, 0, 0), parseWithOldFormats(value).getTime());
+    }
+
+    // A change from the old SimpleDateFormat patterns, which stopped at the '.', so dropped both the fraction and the
+    // offset and read the timestamp as local time.
+    @SmallTest
+    public void testFractionalSeconds() {
+        assertEquals(getUtcTime(2014, 3, 1, 19, 0, 0, 500),
+                GraphDateParser.parse("2014-03-01T19:00:00.5+0000").getTime());
+        assertEquals(getUtcTime(2014, 3, 1, 19, 0, 0, 123),
+                GraphDateParser.parse("2014-03-01T19:00:00.123Z").getTime());
+        assertEquals(getUtcTime(2014, 3, 1, 19, 0, 0, 123),
+                GraphDateParser.parse("2014-03-01T19:00:00.123456+00:00").getTime());
+        assertEquals(getLocalTime(2014, 3, 1, 19, 0, 0, 250),
+                GraphDateParser.parse("2014-03-01T19:00:00.25").getTime());
+
+        assertEquals(getLocalTime(2014, 3, 1, 19, 0, 0, 0),
+                parseWithOldFormats("2014-03-01T19:00:00.123+0000").getTime());
+    }
+
+    @SmallTest
+    public void testNoOffsetIsLocalTime() {
+        assertEquals(getLocalTime(2014, 3, 1, 19, 0, 0, 0), GraphDateParser.parse("2014-03-01T19:00:00").getTime());
+        assertEquals(getLocalTime(2014, 3, 1, 0, 0, 0, 0), GraphDateParser.parse("2014-03-01").getTime());
+    }
+
+    @SmallTest
+    public void testUnusualInputMatchesOldFormats() {
+        String[] values = new String[] {
+                // Before the Gregorian calendar
+                "1500-06-15T12:00:00+0000",
+                // Out-of-range fields, which SimpleDateFormat rolls over
+                "2014-02-30T19:00:00+0000", "2014-03-01T25:00:00+0000", "2014-13-01",
+                // Trailing text after a date-time without an offset
+                "2014-03-01T19:00:00 PST" };
+        for (String value : values) {
+            assertEquals(value, parseWithOldFormats(value), GraphDateParser.parse(value));
+        }
+    }
+
+    @SmallTest
+    public void testInvalidInput() {
+        assertNull(GraphDateParser.parse(""));
+        assertNull(GraphDateParser.parse("not a date"));
+        assertNull(GraphDateParser.parse("2014/03/01"));
+    }
+
+    @SmallTest
+    public void testCachedDatesAreNotShared() {
+        Date first = GraphDateParser.parse("2014-03-01T19:00:00+0000");
+        first.setTime(0);
+        Date second = GraphDateParser.parse("2014-03-01T19:00:00+0000");
+
+        assertNotSame(first, second);
+        assertEquals(getUtcTime(2014, 3, 1, 19, 0, 0, 0), second.getTime());
+    }
+
+    @MediumTest
+    public void testMatchesOldFormats() {
+        Random random = new Random(0);
+        String[] offsets = new String[] { "+0000", "-0700", "+0530", "" };
+        for (String timeZone : new String[] { "UTC", "America/Los_Angeles", "Asia/Kolkata", "Australia/Sydney" }) {
+            TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+            for (int i = 0; i < 10000; i++) {
+                String value = String.format(Locale.US, "%04d-%02d-%02dT%02d:%02d:%02d%s",
+                        1970 + random.nextInt(100), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                        random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                        offsets[random.nextInt(offsets.length)]);
+                assertEquals(timeZone + " " + value, parseWithOldFormats(value), GraphDateParser.parse(value));
+            }
+        }
+    }
+
+    @LargeTest
+    public void testBenchmarkParse() {
+        final int iterations = 100000;
+        String[] values = new String[256];
+        Random random = new Random(0);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.format(Locale.US, "%04d-%02d-%02dT%02d:%02d:%02d+0000",
+                    2000 + random.nextInt(20), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        }
+        SimpleDateFormat[] oldFormats = createOldFormats();
+        String[] cachedValues = new String[] { values[0] };
+
+        // Warm up.
+        for (int i = 0; i < 3; i++) {
+            parseAll(values, iterations, null);
+            parseAll(cachedValues, iterations, null);
+            parseAll(values, iterations, oldFormats);
+        }
+
+        // 256 distinct values overflow the parser's cache, so every call parses.
+        long newTime = parseAll(values, iterations, null);
+        long cachedTime = parseAll(cachedValues, iterations, null);
+        long oldTime = parseAll(values, iterations, oldFormats);
+        Log.i(TAG, String.format("%d ns per parse, %d ns on a cache hit, %d ns with SimpleDateFormat",
+                newTime / iterations, cachedTime / iterations, oldTime / iterations));
+    }
+
+    // Parses values round-robin with GraphDateParser, or with oldFormats if they are given.
+    private static long parseAll(String[] values, int iterations, SimpleDateFormat[] oldFormats) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String value = values[i % values.length];
+            Date date = (oldFormats != null) ? parseWithFormats(oldFormats, value) : GraphDateParser.parse(value);
+            checksum += date.getTime();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(checksum != 0);
+        return elapsed;
+    }
+
+    private static Date parseWithOldFormats(String value) {
+        return parseWithFormats(createOldFormats(), value);
+    }
+
+    private static Date parseWithFormats(SimpleDateFormat[] formats, String value) {
+        for (SimpleDateFormat format : formats) {
+            try {
+                Date date = format.parse(value);
+                if (date != null) {
+                    return date;
+                }
+            } catch (ParseException e) {
+                // Keep going.
+            }
+        }
+        return null;
+    }
+
+    private static SimpleDateFormat[] createOldFormats() {
+        SimpleDateFormat[] formats = new SimpleDateFormat[OLD_FORMATS.length];
+        for (int i = 0; i < formats.length; i++) {
+            formats[i] = new SimpleDateFormat(OLD_FORMATS[i], Locale.US);
+        }
+        return formats;
+    }
+
+    private static long getUtcTime(int year, int month, int day, int hour, int minute, int second,
+            int millisecond) {
+        return getTime(TimeZone.getTimeZone("UTC"), year, month, day, hour, minute, second, millisecond);
+    }
+
+    private static long getLocalTime(int year, int month, int day, int hour, int minute, int second,
+            int millisecond) {
+        return getTime(TimeZone.getDefault(), year, month, day, hour, minute, second, millisecond);
+    }
+
+    private static long getTime(TimeZone timeZone, int year, int month, int day, int hour, int minute, int second,
+            int millisecond) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millisecond);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.model;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// The GraphObjectImpl classes are written by hand, so these check each of them against the proxy that
+// GraphObject.Factory would otherwise create for the same interface.
+public final class GraphObjectImplTests extends AndroidTestCase {
+    private static final String TAG = GraphObjectImplTests.class.getSimpleName();
+
+    @SmallTest
+    public void testFactoryCreatesImplForEveryRegisteredClass() {
+        for (Class<?> graphObjectClass : GraphObject.Factory.getImplementedClasses()) {
+            GraphObject graphObject = GraphObject.Factory.create(graphObjectClass.asSubclass(GraphObject.class));
+            assertTrue(graphObjectClass.getName(), graphObject instanceof GraphObjectImpl);
+            assertTrue(graphObjectClass.getName(), graphObjectClass.isInstance(graphObject));
+        }
+    }
+
+    @SmallTest
+    public void testGettersReadSameKeysAsProxy() throws Exception {
+        for (Class<?> graphObjectClass : GraphObject.Factory.getImplementedClasses()) {
+            for (Method method : getAccessors(graphObjectClass)) {
+                if (method.getParameterTypes().length != 0) {
+                    continue;
+                }
+                String name = graphObjectClass.getSimpleName() + "." + method.getName();
+
+                Object sampleValue = createSampleJsonValue(method);
+                RecordingJSONObject implState = new RecordingJSONObject(sampleValue);
+                RecordingJSONObject proxyState = new RecordingJSONObject(sampleValue);
+                Object implValue = method.invoke(createImpl(graphObjectClass, implState));
+                Object proxyValue = method.invoke(createProxy(graphObjectClass, proxyState));
+
+                assertFalse(name, implState.readKeys.isEmpty());
+                assertEquals(name, proxyState.readKeys, implState.readKeys);
+                assertSameValue(name, proxyValue, implValue);
+            }
+        }
+    }
+
+    @SmallTest
+    public void testSettersWriteSameKeysAsProxy() throws Exception {
+        for (Class<?> graphObjectClass : GraphObject.Factory.getImplementedClasses()) {
+            for (Method method : getAccessors(graphObjectClass)) {
+                if (method.getParameterTypes().length != 1) {
+                    continue;
+                }
+                String name = graphObjectClass.getSimpleName() + "." + method.getName();
+
+                JSONObject implState = new JSONObject();
+                JSONObject proxyState = new JSONObject();
+                method.invoke(createImpl(graphObjectClass, implState), createSampleArgument(method));
+                method.invoke(createProxy(graphObjectClass, proxyState), createSampleArgument(method));
+
+                assertEquals(name, 1, implState.length());
+                assertEquals(name, getKeys(proxyState), getKeys(implState));
+                assertEquals(name, proxyState.toString(), implState.toString());
+            }
+        }
+    }
+
+    // The getters above are only given values of the type they expect.  Primitive getters must also agree when the
+    // value is missing, or is a number of another type, or isn't a number at all.
+    @SmallTest
+    public void testPrimitiveGettersAgreeOnUnexpectedValues() throws Exception {
+        Object[] values = new Object[] { null, Integer.valueOf(7), Long.valueOf(7), Double.valueOf(7.5),
+                Boolean.TRUE, "not a number", createSampleObject() };
+        for (Class<?> graphObjectClass : GraphObject.Factory.getImplementedClasses()) {
+            for (Method method : getAccessors(graphObjectClass)) {
+                if (method.getParameterTypes().length != 0 || !method.getReturnType().isPrimitive()) {
+                    continue;
+                }
+                RecordingJSONObject recorder = new RecordingJSONObject(null);
+                method.invoke(createImpl(graphObjectClass, recorder));
+                String key = recorder.readKeys.iterator().next();
+
+                for (Object value : values) {
+                    String name = graphObjectClass.getSimpleName() + "." + method.getName() + " with " + value;
+                    JSONObject state = new JSONObject();
+                    state.putOpt(key, value);
+
+                    Object implValue = method.invoke(createImpl(graphObjectClass, state));
+                    Object proxyValue = method.invoke(createProxy(graphObjectClass, state));
+                    assertEquals(name, implValue, proxyValue);
+                }
+            }
+        }
+    }
+
+    // Interfaces that extend a registered one always get a proxy, which must read primitives the same way.
+    @SmallTest
+    public void testProxyPrimitiveGetters() throws Exception {
+        JSONObject state = new JSONObject();
+        GraphLocationWithCount location = GraphObject.Factory.create(state, GraphLocationWithCount.class);
+        assertTrue(Proxy.isProxyClass(location.getClass()));
+
+        assertEquals(0.0, location.getLatitude());
+        assertEquals(0, location.getCheckinCount());
+        assertFalse(location.getIsVerified());
+
+        state.put("latitude", 47);
+        state.put("checkin_count", Long.valueOf(12));
+        state.put("is_verified", true);
+        assertEquals(47.0, location.getLatitude());
+        assertEquals(12, location.getCheckinCount());
+        assertTrue(location.getIsVerified());
+    }
+
+    @LargeTest
+    public void testBenchmarkGetter() {
+        final int iterations = 1000000;
+        JSONObject state = new JSONObject();
+        GraphPlace impl = GraphObject.Factory.create(state, GraphPlace.class);
+        GraphPlace proxy = GraphObject.Factory.createProxy(GraphPlace.class, state);
+        impl.setName("name");
+
+        // Warm up; a single pass leaves the first one timed still partly interpreted.
+        for (int i = 0; i < 5; i++) {
+            readNames(impl, iterations);
+            readNames(proxy, iterations);
+        }
+
+        long implTime = readNames(impl, iterations);
+        long proxyTime = readNames(proxy, iterations);
+        Log.i(TAG, String.format("getName(): %d ns with GraphPlaceImpl, %d ns with a proxy",
+                implTime / iterations, proxyTime / iterations));
+    }
+
+    private static long readNames(GraphPlace place, int iterations) {
+        int length = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            length += place.getName().length();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(iterations * 4, length);
+        return elapsed;
+    }
+
+    // The getters and setters of graphObjectClass, leaving out the ones inherited from GraphObject.
+    private static List<Method> getAccessors(Class<?> graphObjectClass) {
+        List<Method> result = new ArrayList<Method>();
+        for (Method method : graphObjectClass.getMethods()) {
+            if (!method.getDeclaringClass().isAssignableFrom(GraphObject.class)) {
+                result.add(method);
+            }
+        }
+        return result;
+    }
+
+    private static GraphObject createImpl(Class<?> graphObjectClass, JSONObject state) {
+        GraphObject result = GraphObject.Factory.create(state, graphObjectClass.asSubclass(GraphObject.class));
+        assertTrue(result instanceof GraphObjectImpl);
+        return result;
+    }
+
+    private static GraphObject createProxy(Class<?> graphObjectClass, JSONObject state) {
+        GraphObject result = GraphObject.Factory.createProxy(graphObjectClass.asSubclass(GraphObject.class), state);
+        assertTrue(Proxy.isProxyClass(result.getClass()));
+        return result;
+    }
+
+    // A value that a getter with the given return type can read from the JSON.
+    private static Object createSampleJsonValue(Method getter) throws JSONException {
+        Class<?> type = getter.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.TRUE;
+        } else if (type == double.class) {
+            return Double.valueOf(1.5);
+        } else if (type == long.class) {
+            return Long.valueOf(42);
+        } else if (type == int.class) {
+            return Integer.valueOf(42);
+        } else if (type == Date.class) {
+            return "2014-03-01T19:00:00+0000";
+        } else if (List.class.isAssignableFrom(type)) {
+            JSONArray array = new JSONArray();
+            array.put(getElementType(getter.getGenericReturnType()) == String.class ? "value" : createSampleObject());
+            return array;
+        } else if (GraphObject.class.isAssignableFrom(type) || type == JSONObject.class) {
+            return createSampleObject();
+        }
+        return "value";
+    }
+
+    // A value that can be passed to the given setter.
+    private static Object createSampleArgument(Method setter) throws JSONException {
+        Class<?> type = setter.getParameterTypes()[0];
+        if (type == boolean.class) {
+            return true;
+        } else if (type == double.class) {
+            return 1.5;
+        } else if (type == long.class) {
+            return 42L;
+        } else if (type == int.class) {
+            return 42;
+        } else if (type == Date.class) {
+            return new Date(0);
+        } else if (type == GraphObjectList.class) {
+            GraphObjectList<GraphObject> list = GraphObject.Factory.createList(GraphObject.class);
+            list.add(GraphObject.Factory.create(createSampleObject()));
+            return list;
+        } else if (List.class.isAssignableFrom(type)) {
+            Type elementType = getElementType(setter.getGenericParameterTypes()[0]);
+            if (elementType == String.class) {
+                return Arrays.asList("value");
+            } else if (elementType == JSONObject.class) {
+                return Arrays.asList(createSampleObject());
+            }
+            return Arrays.asList(GraphObject.Factory.create(createSampleObject()));
+        } else if (GraphObject.class.isAssignableFrom(type)) {
+            return GraphObject.Factory.create(createSampleObject(), type.asSubclass(GraphObject.class));
+        } else if (type == JSONObject.class) {
+            return createSampleObject();
+        }
+        return "value";
+    }
+
+    private static JSONObject createSampleObject() throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("id", "1");
+        return result;
+    }
+
+    private static Type getElementType(Type listType) {
+        Type elementType = ((ParameterizedType) listType).getActualTypeArguments()[0];
+        if (elementType instanceof WildcardType) {
+            elementType = ((WildcardType) elementType).getUpperBounds()[0];
+        }
+        return elementType;
+    }
+
+    private static void assertSameValue(String name, Object expected, Object actual) {
+        if (expected instanceof GraphObject) {
+            assertTrue(name, actual instanceof GraphObject);
+            assertSame(name, ((GraphObject) expected).getInnerJSONObject(),
+                    ((GraphObject) actual).getInnerJSONObject());
+        } else if (expected instanceof List) {
+            assertTrue(name, actual instanceof List);
+            assertEquals(name, ((List<?>) expected).size(), ((List<?>) actual).size());
+        } else {
+            assertEquals(name, expected, actual);
+        }
+    }
+
+    private static Set<String> getKeys(JSONObject object) {
+        Set<String> result = new TreeSet<String>();
+        JSONArray names = object.names();
+        for (int i = 0; names != null && i < names.length(); i++) {
+            result.add(names.optString(i));
+        }
+        return result;
+    }
+
+    interface GraphLocationWithCount extends GraphLocation {
+        int getCheckinCount();
+        boolean getIsVerified();
+    }
+
+    // Records every key read from it, and returns the same value for all of them.
+    private static final class RecordingJSONObject extends JSONObject {
+        final Set<String> readKeys = new TreeSet<String>();
+        private final Object value;
+
+        RecordingJSONObject(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object opt(String name) {
+            readKeys.add(name);
+            return value;
+        }
+
+        @Override
+        public boolean optBoolean(String name, boolean fallback) {
+            readKeys.add(name);
+            return (value instanceof Boolean) ? (Boolean) value : fallback;
+        }
+
+        @Override
+        public long optLong(String name, long fallback) {
+            readKeys.add(name);
+            return (value instanceof Number) ? ((Number) value).longValue() : fallback;
+        }
+
+        @Override
+        public double optDouble(String name, double fallback) {
+            readKeys.add(name);
+            return (value instanceof Number) ? ((Number) value).doubleValue() : fallback;
+        }
+    }
+}
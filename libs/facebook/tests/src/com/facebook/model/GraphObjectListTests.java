@@ -0,0 +1,199 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.model;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public final class GraphObjectListTests extends AndroidTestCase {
+
+    @SmallTest
+    public void testGetReusesWrapper() throws JSONException {
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(createUsers(3), GraphUser.class);
+
+        GraphUser user = list.get(1);
+        assertSame(user, list.get(1));
+        assertSame(list.getInnerJSONArray().get(1), user.getInnerJSONObject());
+        assertEquals("1", user.getId());
+    }
+
+    @SmallTest
+    public void testIterationReusesWrappers() throws JSONException {
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(createUsers(3), GraphUser.class);
+
+        GraphUser second = list.get(1);
+        List<GraphUser> firstPass = new ArrayList<GraphUser>(list);
+        assertSame(second, firstPass.get(1));
+
+        Iterator<GraphUser> secondPass = list.iterator();
+        for (int i = 0; i < firstPass.size(); i++) {
+            assertSame(firstPass.get(i), secondPass.next());
+        }
+        assertFalse(secondPass.hasNext());
+    }
+
+    @SmallTest
+    public void testSetOfItemTypeIsReturnedByGet() throws JSONException {
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(createUsers(2), GraphUser.class);
+        list.get(0);
+
+        GraphUser replacement = GraphObject.Factory.create(createUser("42"), GraphUser.class);
+        list.set(0, replacement);
+
+        assertSame(replacement, list.get(0));
+    }
+
+    @SmallTest
+    public void testSetOfOtherTypeDropsCachedWrapper() throws JSONException {
+        GraphObjectList<GraphObject> users = GraphObject.Factory.createList(createUsers(2), GraphObject.class);
+        GraphObjectList<GraphUser> list = users.castToListOf(GraphUser.class);
+        GraphUser old = list.get(0);
+
+        // A plain GraphObject is not a GraphUser, so the list must not hand it out, nor the wrapper it held before.
+        JSONObject replacementState = createUser("42");
+        list.castToListOf(GraphObject.class).set(0, GraphObject.Factory.create(replacementState));
+        GraphUser user = list.get(0);
+
+        assertNotSame(old, user);
+        assertSame(replacementState, user.getInnerJSONObject());
+        assertEquals("42", user.getId());
+        assertSame(user, list.get(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    @SmallTest
+    public void testSetOfNonGraphObjectDropsCachedWrapper() throws JSONException {
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(createUsers(2), GraphUser.class);
+        GraphUser old = list.get(0);
+
+        // A raw JSONObject is not a GraphUser either; callers can put one in through an unchecked reference.
+        List<Object> rawList = (List<Object>) (List<?>) list;
+        JSONObject replacementState = createUser("42");
+        assertSame(old, rawList.set(0, replacementState));
+        GraphUser user = list.get(0);
+
+        assertNotSame(old, user);
+        assertSame(replacementState, user.getInnerJSONObject());
+        assertEquals("42", user.getId());
+    }
+
+    @SmallTest
+    public void testExternalChangeToInnerArrayDropsCachedWrapper() throws JSONException {
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(createUsers(2), GraphUser.class);
+        GraphUser old = list.get(1);
+
+        JSONObject replacementState = createUser("42");
+        list.getInnerJSONArray().put(1, replacementState);
+        GraphUser user = list.get(1);
+
+        assertNotSame(old, user);
+        assertSame(replacementState, user.getInnerJSONObject());
+        assertEquals("42", user.getId());
+    }
+
+    @SmallTest
+    public void testVisitorSeesEveryObjectInOrder() throws JSONException {
+        JSONArray array = createUsers(3);
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(array, GraphUser.class);
+
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final List<JSONObject> objects = new ArrayList<JSONObject>();
+        list.visitInnerJSONObjects(new GraphObjectList.InnerJSONObjectVisitor() {
+            @Override
+            public boolean visit(int index, JSONObject innerJSONObject) {
+                indexes.add(index);
+                objects.add(innerJSONObject);
+                return true;
+            }
+        });
+
+        assertEquals(3, indexes.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, indexes.get(i).intValue());
+            assertSame(array.get(i), objects.get(i));
+        }
+    }
+
+    @SmallTest
+    public void testVisitorStopsEarly() throws JSONException {
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(createUsers(5), GraphUser.class);
+
+        final List<Integer> indexes = new ArrayList<Integer>();
+        list.visitInnerJSONObjects(new GraphObjectList.InnerJSONObjectVisitor() {
+            @Override
+            public boolean visit(int index, JSONObject innerJSONObject) {
+                indexes.add(index);
+                return index < 2;
+            }
+        });
+
+        assertEquals(3, indexes.size());
+        assertEquals(2, indexes.get(2).intValue());
+    }
+
+    @SmallTest
+    public void testVisitorSkipsNonObjects() throws JSONException {
+        JSONArray array = new JSONArray();
+        array.put(createUser("0"));
+        array.put("a string");
+        array.put(7);
+        array.put(new JSONArray());
+        array.put(JSONObject.NULL);
+        array.put(createUser("5"));
+        GraphObjectList<GraphUser> list = GraphObject.Factory.createList(array, GraphUser.class);
+
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final List<String> ids = new ArrayList<String>();
+        list.visitInnerJSONObjects(new GraphObjectList.InnerJSONObjectVisitor() {
+            @Override
+            public boolean visit(int index, JSONObject innerJSONObject) {
+                indexes.add(index);
+                ids.add(innerJSONObject.optString("id"));
+                return true;
+            }
+        });
+
+        assertEquals(2, indexes.size());
+        assertEquals(0, indexes.get(0).intValue());
+        assertEquals(5, indexes.get(1).intValue());
+        assertEquals("0", ids.get(0));
+        assertEquals("5", ids.get(1));
+    }
+
+    private static JSONArray createUsers(int count) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            array.put(createUser(Integer.toString(i)));
+        }
+        return array;
+    }
+
+    private static JSONObject createUser(String id) throws JSONException {
+        JSONObject user = new JSONObject();
+        user.put("id", id);
+        user.put("name", "User " + id);
+        return user;
+    }
+}